@@ -0,0 +1,511 @@
+package musica;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * API HTTP con JSON sobre el catalogo, solo en la direccion local, para que
+ * varios clientes compartan la misma aplicacion.
+ *
+ * <pre>
+ * GET    /canciones?campo=valor...&amp;desde=0&amp;limite=100
+ * GET    /canciones/{id}
+ * POST   /canciones                       {"titulo": ..., "duracion": ..., ...}
+ * PUT    /canciones/{id}                  {"campo": "valor", ...}
+ * DELETE /canciones/{id}
+ * GET    /discos
+ * POST   /discos                          {"id": ...}
+ * GET    /discos/{id}
+ * PUT    /discos/{id}/canciones/{cancion}
+ * DELETE /discos/{id}/canciones/{cancion}
+ * POST   /discos/{id}/grabar
+ * GET    /estado
+ * </pre>
+ *
+ * Los campos de las canciones y de las busquedas son los de
+ * {@link BatchRunner}, con las mismas reglas. Los errores se responden con su
+ * codigo HTTP y un objeto {@code {"error": motivo}}.
+ *
+ * Cada solicitud se atiende en su propio hilo: uno virtual si la version de
+ * Java los tiene (21 o posterior), o uno de plataforma si no. Las lecturas usan
+ * {@link Catalog#read} y no esperan a los cambios; los cambios pasan por los
+ * mismos metodos de {@link App} que el menu.
+ *
+ * El servidor mide cuanto tarda cada solicitud, desde que la recibe hasta que
+ * termina de enviar la respuesta, y {@code /estado} responde cuantas ha
+ * atendido y la mediana y el percentil 99 de esos tiempos, en milisegundos.
+ */
+public class ApiServer {
+
+    /**
+     * Canciones que devuelve una busqueda si no se indica el limite.
+     */
+    public static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Canciones que devuelve una busqueda como maximo.
+     */
+    public static final int MAX_LIMIT = 1000;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    /**
+     * Error que se responde con un codigo HTTP distinto de 400.
+     */
+    private static class Status extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        Status(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private final App app;
+    private final HttpServer server;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * @param app  Aplicacion que atiende las solicitudes.
+     * @param port Puerto local, o 0 para elegir uno libre.
+     */
+    public ApiServer(App app, int port) throws IOException {
+        this.app = app;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(perRequest());
+    }
+
+    /**
+     * Obtiene un ejecutor que usa un hilo nuevo por tarea, virtual si la version
+     * de Java los tiene.
+     */
+    private static ExecutorService perRequest() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "api");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Deja de aceptar solicitudes y espera hasta un segundo a que terminen las
+     * que estan en curso.
+     */
+    public void stop() {
+        server.stop(1);
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+
+        try (exchange) {
+            int status = 200;
+            String body;
+
+            try {
+                String method = exchange.getRequestMethod();
+                String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+
+                body = switch (path[0]) {
+                    case "canciones" -> songs(exchange, method, path);
+                    case "discos" -> discs(exchange, method, path);
+                    case "estado" -> status(method, path);
+                    default -> throw new Status(404, "No existe el recurso.");
+                };
+
+                if (method.equals("POST") && path.length == 1) {
+                    status = 201;
+                }
+            } catch (Status e) {
+                status = e.code;
+                body = error(e.getMessage());
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (RuntimeException e) {
+                status = 500;
+                body = error("Error interno.");
+            }
+
+            send(exchange, status, body);
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private String status(String method, String[] path) {
+        if (path.length > 1) {
+            throw new Status(404, "No existe el recurso.");
+        } else if (!method.equals("GET")) {
+            throw notAllowed();
+        }
+
+        return "{\"solicitudes\":" + latencies.count() + ",\"p50\":" + millis(latencies.percentile(50))
+                + ",\"p99\":" + millis(latencies.percentile(99)) + "}";
+    }
+
+    private static String millis(long micros) {
+        return micros / 1000 + "." + String.format("%03d", micros % 1000);
+    }
+
+    private String songs(HttpExchange exchange, String method, String[] path) throws IOException {
+        if (path.length == 1) {
+            return switch (method) {
+                case "GET" -> search(query(exchange));
+                case "POST" -> {
+                    Song song = CatalogImporter.song(CatalogImporter.jsonFields(body(exchange)));
+                    app.add(song);
+                    yield song(new StringBuilder(), song).toString();
+                }
+                default -> throw notAllowed();
+            };
+        } else if (path.length == 2) {
+            int id = number(path[1]);
+
+            return switch (method) {
+                case "GET" -> song(new StringBuilder(), find(id)).toString();
+                case "PUT" -> {
+                    Map<String, String> fields = CatalogImporter.jsonObject(body(exchange));
+                    Song song = app.update(id, copy -> {
+                        for (Map.Entry<String, String> field : fields.entrySet()) {
+                            BatchRunner.set(copy, field.getKey(), field.getValue());
+                        }
+                    });
+
+                    if (song == null) {
+                        throw missing(id);
+                    }
+
+                    yield song(new StringBuilder(), song).toString();
+                }
+                case "DELETE" -> {
+                    int discs = app.remove(id);
+
+                    if (discs < 0) {
+                        throw missing(id);
+                    }
+
+                    yield "{\"id\":" + id + ",\"discos\":" + discs + "}";
+                }
+                default -> throw notAllowed();
+            };
+        }
+
+        throw new Status(404, "No existe el recurso.");
+    }
+
+    private String search(Map<String, String> parameters) {
+        SongQuery query = new SongQuery();
+        int from = 0;
+        int limit = DEFAULT_LIMIT;
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            switch (parameter.getKey()) {
+                case "desde" -> from = number(parameter.getValue());
+                case "limite" -> limit = Math.min(number(parameter.getValue()), MAX_LIMIT);
+                default -> BatchRunner.criterion(query, parameter.getKey(), parameter.getValue());
+            }
+        }
+
+        if (from < 0) {
+            throw new IllegalArgumentException("desde: El valor no puede ser negativo.");
+        } else if (limit < 0) {
+            throw new IllegalArgumentException("limite: El valor no puede ser negativo.");
+        }
+
+        int first = from;
+        int count = limit;
+
+        // La respuesta se arma dentro de la lectura, sin copiar el catalogo.
+        return app.catalog.read(songs -> {
+            IdBitmap ids = query.ids(songs);
+            StringBuilder json = new StringBuilder(64 + count * 200);
+            json.append("{\"total\":").append(ids.cardinality()).append(",\"canciones\":[");
+
+            int end = (int) Math.min(ids.cardinality(), (long) first + count);
+
+            for (int rank = first; rank < end; rank++) {
+                int index = songs.indexOfId(ids.select(rank));
+
+                if (rank > first) {
+                    json.append(',');
+                }
+
+                song(json, index >= 0 ? songs.view(index) : new Song());
+            }
+
+            return json.append("]}").toString();
+        });
+    }
+
+    private String discs(HttpExchange exchange, String method, String[] path) throws IOException {
+        if (path.length == 1) {
+            return switch (method) {
+                case "GET" -> {
+                    StringBuilder json = new StringBuilder("[");
+
+                    for (Playlist playlist : app.playlists) {
+                        if (json.length() > 1) {
+                            json.append(',');
+                        }
+
+                        disc(json, playlist);
+                    }
+
+                    yield json.append(']').toString();
+                }
+                case "POST" -> {
+                    String id = CatalogImporter.jsonObject(body(exchange)).get("id");
+
+                    if (id == null) {
+                        throw new IllegalArgumentException("id: Falta el campo.");
+                    }
+
+                    Playlist playlist = new Playlist(InteractiveScanner.parseLine(id, Playlist.MAX_ID_LENGTH));
+                    app.savePlaylist(-1, playlist);
+                    yield disc(new StringBuilder(), playlist).toString();
+                }
+                default -> throw notAllowed();
+            };
+        }
+
+        String id = path[1];
+
+        if (path.length == 2 && method.equals("GET")) {
+            return disc(new StringBuilder(), findDisc(app.playlists, id)).toString();
+        } else if (path.length == 3 && path[2].equals("grabar") && method.equals("POST")) {
+            Playlist playlist = findDisc(app.playlists, id);
+
+            if (playlist.isEmpty()) {
+                throw new IllegalArgumentException("No se puede grabar un disco sin canciones.");
+            }
+
+            DiscBurner.Result result;
+
+            try {
+                result = app.burner.burn(playlist, app.catalog.snapshot());
+            } catch (IOException e) {
+                throw new Status(500, "No se pudo guardar el disco (" + e.getMessage() + ").");
+            }
+
+            StringBuilder json = new StringBuilder("{\"disco\":");
+            quote(json, playlist.getId()).append(",\"archivo\":");
+            quote(json, result.path().toString()).append(",\"bytes\":").append(result.bytes()).append('}');
+            return json.toString();
+        } else if (path.length == 4 && path[2].equals("canciones")) {
+            int songId = number(path[3]);
+
+            return switch (method) {
+                case "PUT" -> edit(id, songId, true);
+                case "DELETE" -> edit(id, songId, false);
+                default -> throw notAllowed();
+            };
+        } else if (path.length <= 4) {
+            throw notAllowed();
+        }
+
+        throw new Status(404, "No existe el recurso.");
+    }
+
+    /**
+     * Agrega o quita una cancion de un disco guardado. Se sincroniza sobre la
+     * aplicacion para que dos cambios al mismo disco no se pierdan.
+     */
+    private String edit(String id, int songId, boolean add) {
+        synchronized (app) {
+            PlaylistRegistry playlists = app.playlists;
+            int position = playlists.indexOfId(id);
+
+            if (position < 0) {
+                throw new Status(404, "No existe el disco '" + id + "'.");
+            }
+
+            Song song = find(songId);
+            Playlist playlist = playlists.get(position).copy();
+
+            if (!add) {
+                if (!playlist.removeSong(song)) {
+                    throw new Status(404, "La cancion no esta en el disco.");
+                }
+            } else if (playlist.getSize() + song.getSize() > Playlist.CAPACITY) {
+                throw new IllegalArgumentException("La cancion excede el tamano maximo de la lista de reproduccion.");
+            } else if (!playlist.addSong(song)) {
+                throw new Status(409, "La cancion ya esta en la lista de reproduccion.");
+            }
+
+            app.savePlaylist(position, playlist);
+            return disc(new StringBuilder(), playlist).toString();
+        }
+    }
+
+    private Song find(int id) {
+        Song song = app.catalog.read(songs -> {
+            int index = songs.indexOfId(id);
+            return index >= 0 ? songs.view(index) : null;
+        });
+
+        if (song == null) {
+            throw missing(id);
+        }
+
+        return song;
+    }
+
+    private static Playlist findDisc(PlaylistRegistry playlists, String id) {
+        Playlist playlist = playlists.byId(id);
+
+        if (playlist == null) {
+            throw new Status(404, "No existe el disco '" + id + "'.");
+        }
+
+        return playlist;
+    }
+
+    private static Status missing(int id) {
+        return new Status(404, "No existe la cancion " + id + ".");
+    }
+
+    private static Status notAllowed() {
+        return new Status(405, "Metodo no permitido.");
+    }
+
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El numero no es valido: " + value + ".");
+        }
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lee los parametros de la consulta de una solicitud. Si uno se repite, se
+     * conserva el ultimo.
+     */
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator >= 0 ? pair.substring(0, separator) : pair;
+            String value = separator >= 0 ? pair.substring(separator + 1) : "";
+
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String error(String message) {
+        return quote(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    private static StringBuilder song(StringBuilder json, Song song) {
+        json.append("{\"id\":").append(song.getId()).append(",\"titulo\":");
+        quote(json, song.getTitle()).append(",\"duracion\":");
+        quote(json, Song.formatLength(song.getLength())).append(",\"artista\":");
+        quote(json, song.getArtist()).append(",\"autor\":");
+        quote(json, song.getAuthor()).append(",\"fecha\":");
+        quote(json, song.getReleaseDate() != null ? DATE_FORMAT.format(song.getReleaseDate()) : null)
+                .append(",\"genero\":");
+        quote(json, song.getGenre()).append(",\"tamano\":");
+        return quote(json, Song.formatSize(song.getSize())).append('}');
+    }
+
+    private static StringBuilder disc(StringBuilder json, Playlist playlist) {
+        json.append("{\"id\":");
+        quote(json, playlist.getId()).append(",\"tamano\":");
+        quote(json, Song.formatSize(playlist.getSize())).append(",\"canciones\":[");
+        int[] ids = playlist.getSongIds();
+
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append(ids[i]);
+        }
+
+        return json.append("]}");
+    }
+
+    /**
+     * Escribe un texto como cadena JSON, o {@code null}.
+     */
+    private static StringBuilder quote(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append("\\u%04x".formatted((int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+
+        return json.append('"');
+    }
+}
@@ -1,51 +1,110 @@
 package musica;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Representa la aplicacion de musica.
  * 
  * Esta aplicacion puede agregar canciones, grabar discos y realizar busquedas
- * extensas en las canciones disponibles en la base de datos. Tambien, al
- * finalizar su ejecucion guarda sus datos, tanto de canciones como playlists,
- * en un archivo que al iniciar el programa sera restaurado.
+ * extensas en las canciones disponibles en la base de datos. Cada cambio se
+ * registra en un diario al momento de hacerse; en segundo plano, y al finalizar
+ * su ejecucion, guarda sus datos, tanto de canciones como playlists, en un
+ * archivo que al iniciar el programa sera restaurado junto con los cambios del
+ * diario. La carga se hace en segundo plano, y el menu esta disponible desde
+ * el inicio.
+ *
+ * Los cambios al catalogo y a las playlists se hacen de uno en uno,
+ * sincronizados sobre la aplicacion, para que el diario los registre en el
+ * mismo orden y el respaldo en segundo plano tome una vista consistente de
+ * ambos. Las lecturas no se sincronizan: las canciones se leen con
+ * {@link Catalog#read}, y el {@link PlaylistRegistry} se puede leer mientras
+ * se modifica.
  */
 public class App {
 
+  /**
+   * Respaldo de las versiones anteriores. Los respaldos nuevos se escriben
+   * junto a el, con su numero de generacion; ver {@link Checkpointer}.
+   */
+  static final Path BACKUP = Path.of("respaldo.arr");
+
+  static final Path JOURNAL = Path.of("respaldo.log");
+
   final InteractiveScanner scanner;
 
-  ArrayList<Song> songs;
+  /**
+   * Canciones, que se leen sin bloquearse mientras se modifican.
+   */
+  final Catalog catalog;
+
+  /**
+   * Playlists guardadas. Durante la carga se publican copias; despues, el
+   * registro se modifica directamente, sincronizado sobre la aplicacion.
+   */
+  volatile PlaylistRegistry playlists;
+
+  volatile Journal journal;
+
+  final Checkpointer checkpointer;
+
+  final CatalogLoader loader;
+
+  final DiscBurner burner;
+
+  /**
+   * Ultimo numero de secuencia del diario incluido en el respaldo en disco.
+   */
+  volatile long backupLsn;
 
-  ArrayList<Playlist> playlists;
+  /**
+   * Respaldo mas reciente en disco, o {@code null} si aun no hay ninguno.
+   */
+  volatile Path backup;
 
   public App() {
     scanner = new InteractiveScanner();
+    catalog = new Catalog();
+    playlists = new PlaylistRegistry();
 
-    try {
-      FileInputStream fis = new FileInputStream("respaldo.arr");
-      ObjectInputStream ois = new ObjectInputStream(fis);
-
-      songs = (ArrayList<Song>) ois.readObject();
-      playlists = (ArrayList<Playlist>) ois.readObject();
-      ois.close();
-    } catch (IOException | ClassNotFoundException e) {
-      songs = new ArrayList<>();
-      playlists = new ArrayList<>();
-    }
+    checkpointer = new Checkpointer(this);
+    burner = new DiscBurner();
+    loader = new CatalogLoader(this);
+    loader.start();
   }
 
   /**
    * Contiene un menu de opciones para el usuario. Este debe elegir unicamente una
    * opcion y el programa procedera a desplegar menus en base a este principal.
+   *
+   * Con {@code --batch [archivo]} ejecuta los comandos del archivo, o de la
+   * entrada estandar si no se indica, con {@link BatchRunner}, sin menus. Con
+   * {@code --server [puerto]} atiende la API de {@link ApiServer} hasta que se
+   * detiene el proceso.
    */
   public static void main(String[] args) {
+    Console.install();
+
+    if (args.length > 0 && args[0].equals("--batch")) {
+      batch(args.length > 1 ? Path.of(args[1]) : null);
+      return;
+    }
+
+    if (args.length > 0 && args[0].equals("--server")) {
+      serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+      return;
+    }
+
     App app = new App();
 
     int option = 0;
@@ -57,8 +116,11 @@ public class App {
           1. Agregar Cancion
           2. Borrar Cancion
           3. Modificar Cancion
+          7. Importar Canciones
           -----------------------
           4. Grabar Disco
+          6. Grabar Discos Guardados
+          8. Repartir Canciones en Discos
           -----------------------
           5. Buscar Canciones...
           -----------------------
@@ -78,6 +140,12 @@ public class App {
 
         case 5 -> app.showSongs();
 
+        case 6 -> app.burnCds();
+
+        case 7 -> app.importSongs();
+
+        case 8 -> app.splitCds();
+
         case 0 -> {
           System.out.println("Saliendo...");
         }
@@ -86,40 +154,259 @@ public class App {
       }
     } while (option != 0);
 
+    app.save();
+  }
+
+  /**
+   * Ejecuta los comandos de un archivo o de la entrada estandar. Los resultados
+   * se escriben en la salida estandar, y los mensajes de la aplicacion en la de
+   * errores, para que no se mezclen. Termina con codigo 1 si algun comando
+   * fallo.
+   *
+   * @param path Archivo de comandos, o {@code null} para la entrada estandar.
+   */
+  static void batch(Path path) {
+    PrintStream results = System.out;
+    System.setOut(System.err);
+
+    App app = new App();
+    long errors;
+
+    try (BufferedReader in = path != null ? Files.newBufferedReader(path, StandardCharsets.UTF_8)
+        : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+      errors = new BatchRunner(app, results).run(in);
+    } catch (IOException e) {
+      System.out.println("Error: No se pudieron leer los comandos (" + e.getMessage() + ").");
+      errors = 1;
+    }
+
+    app.save();
+
+    if (errors > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Atiende la API HTTP en un puerto local, despues de cargar el catalogo. Al
+   * detener el proceso (por ejemplo, con Ctrl+C) se deja de aceptar solicitudes
+   * y se guarda el respaldo.
+   *
+   * @param port Puerto local.
+   */
+  static void serve(int port) {
+    App app = new App();
+    app.loader.await();
+
+    ApiServer server;
+
+    try {
+      server = new ApiServer(app, port);
+    } catch (IOException e) {
+      System.out.println("Error: No se pudo abrir el puerto " + port + " (" + e.getMessage() + ").");
+      app.save();
+      System.exit(1);
+      return;
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.stop();
+      app.save();
+      Console.flush();
+    }));
+
+    server.start();
+    System.out.println("Informacion: Servidor escuchando en http://127.0.0.1:" + server.port() + "/");
+    Console.flush();
+  }
+
+  /**
+   * Guarda un respaldo completo del catalogo y vacia el diario, cuyos cambios
+   * quedan incluidos en el respaldo.
+   */
+  public void save() {
+    loader.await();
+    burner.close();
+    checkpointer.close();
+
     try {
-      FileOutputStream fos = new FileOutputStream("respaldo.arr");
-      ObjectOutputStream oos = new ObjectOutputStream(fos);
-      oos.writeObject(app.songs);
-      oos.writeObject(app.playlists);
+      checkpointer.checkpoint();
 
-      oos.close();
+      if (journal != null) {
+        journal.close();
+      }
     } catch (IOException e) {
       System.out.println("Error: No se pudo guardar el respaldo.");
     }
   }
 
+  /**
+   * Registra un cambio en el diario. Si el diario no esta disponible, el cambio
+   * solo quedara guardado en el siguiente respaldo, y se avisa al usuario.
+   */
+  void log(byte op, Journal.Payload payload) {
+    if (journal == null) {
+      System.out.println("Error: El diario de cambios no esta disponible, el cambio solo se guardara al salir.");
+      return;
+    }
+
+    try {
+      journal.append(op, payload);
+    } catch (IOException e) {
+      System.out.println("Error: No se pudo registrar el cambio en el diario, solo se guardara al salir.");
+    }
+  }
+
+  /**
+   * Agrega una cancion al catalogo y la registra en el diario.
+   */
+  void add(Song song) {
+    synchronized (this) {
+      catalog.write(songs -> songs.add(song));
+      log(Journal.ADD_SONG, song::write);
+    }
+  }
+
+  /**
+   * Reemplaza una cancion del catalogo y registra el cambio en el diario. Si
+   * cambia su tamano, tambien se ajusta el de los discos que la tienen.
+   *
+   * @param id   ID de la cancion a reemplazar.
+   * @param song Nueva version de la cancion, que no debe modificarse despues.
+   * @return {@code false} si la cancion ya no esta en el catalogo.
+   * @throws IllegalArgumentException Si con el nuevo tamano algun disco que la
+   *                                  tiene excederia su capacidad.
+   */
+  boolean update(int id, Song song) {
+    synchronized (this) {
+      int index = catalog.read(songs -> songs.indexOfId(id));
+
+      if (index < 0) {
+        return false;
+      }
+
+      int delta = song.getSize() - catalog.read(songs -> songs.size(index));
+
+      for (Playlist playlist : playlists) {
+        if (delta > 0 && playlist.contains(id) && playlist.getSize() + delta > Playlist.CAPACITY) {
+          throw new IllegalArgumentException(
+              "La cancion excederia el tamano maximo del disco '" + playlist.getId() + "'.");
+        }
+      }
+
+      catalog.write(songs -> songs.set(index, song));
+
+      Playlist.resizeSongEverywhere(playlists, id, delta);
+
+      log(Journal.UPDATE_SONG, out -> {
+        out.writeInt(id);
+        song.write(out);
+      });
+      return true;
+    }
+  }
+
+  /**
+   * Modifica una cancion del catalogo. La lectura, el cambio y el reemplazo se
+   * hacen en un mismo bloque sincronizado, para que dos cambios simultaneos a
+   * distintos campos de la misma cancion no se pierdan.
+   *
+   * @param id     ID de la cancion a modificar.
+   * @param change Cambio, que se aplica a una copia de la cancion. Si lanza una
+   *               excepcion, la cancion no se modifica.
+   * @return La nueva version de la cancion, o {@code null} si no esta en el
+   *         catalogo.
+   */
+  Song update(int id, Consumer<Song> change) {
+    synchronized (this) {
+      Song song = catalog.read(songs -> {
+        int index = songs.indexOfId(id);
+        return index >= 0 ? songs.view(index) : null;
+      });
+
+      if (song == null) {
+        return null;
+      }
+
+      song = song.copy();
+      change.accept(song);
+
+      return update(id, song) ? song : null;
+    }
+  }
+
+  /**
+   * Borra una cancion del catalogo, y tambien de las playlists que la tienen.
+   *
+   * @param id ID de la cancion a borrar.
+   * @return El numero de playlists de las que se quito, o -1 si la cancion ya
+   *         no esta en el catalogo.
+   */
+  int remove(int id) {
+    synchronized (this) {
+      int index = catalog.read(songs -> songs.indexOfId(id));
+
+      if (index < 0) {
+        return -1;
+      }
+
+      Song removed = catalog.write(songs -> songs.remove(index));
+      int discs = Playlist.removeSongEverywhere(playlists, removed);
+
+      log(Journal.REMOVE_SONG, out -> out.writeInt(id));
+      return discs;
+    }
+  }
+
+  /**
+   * Guarda una playlist y registra el cambio en el diario.
+   *
+   * @param position Posicion de la playlist que reemplaza, o -1 si es nueva. Una
+   *                 playlist nueva recibe un ID que no usa ninguna otra.
+   * @return La posicion de la playlist guardada.
+   */
+  int savePlaylist(int position, Playlist playlist) {
+    synchronized (this) {
+      int index;
+
+      if (position < 0) {
+        playlist.setId(playlists.uniqueId(playlist.getId()));
+        playlists.add(playlist);
+        index = playlists.size() - 1;
+      } else {
+        playlists.set(position, playlist);
+        index = position;
+      }
+
+      log(Journal.SAVE_PLAYLIST, out -> {
+        out.writeInt(index);
+        playlist.write(out);
+      });
+
+      return index;
+    }
+  }
+
   /**
    * Despliega un menu con opciones para modificar una cancion, ya sea por
    * atributo especifico o sobreescribiendo totalmente sus datos.
    */
   public void updateSong() {
     int option = 0;
+    loader.await();
+    SongTable songs = catalog.snapshot();
 
     if (!songs.isEmpty()) {
       System.out.println("Canciones disponibles:");
       System.out.println("-".repeat(80));
 
-      for (int i = 0; i < songs.size(); i++) {
-        System.out.println(i + 1 + ". " + songs.get(i).getArtist() + " - " + songs.get(i).getTitle());
-      }
-
-      System.out.println("-".repeat(80));
-
-      option = scanner.nextInt("Cancion a modificar");
+      option = SongCursor.of(songs).select(scanner, "Cancion a modificar");
       System.out.println("-".repeat(80));
 
       if (option > 0 && option <= songs.size()) {
-        Song song = songs.get(option - 1);
+        // Se modifica una copia, que reemplaza a la original al finalizar.
+        Song song = songs.get(option - 1).copy();
+        boolean changed = false;
 
         System.out.println("Menu de Modificacion");
         System.out.println("""
@@ -144,6 +431,7 @@ public class App {
 
             if (confirm.equals("s")) {
               song.setTitle(value);
+              changed = true;
               System.out.println("Informacion: Titulo modificado.");
             } else {
               System.out.println("Cancelando...");
@@ -157,6 +445,7 @@ public class App {
 
             if (confirm.equals("s")) {
               song.setArtist(value);
+              changed = true;
               System.out.println("Informacion: Artista modificado.");
             } else {
               System.out.println("Cancelando...");
@@ -170,6 +459,7 @@ public class App {
 
             if (confirm.equals("s")) {
               song.setAuthor(value);
+              changed = true;
               System.out.println("Informacion: Autor modificado.");
             } else {
               System.out.println("Cancelando...");
@@ -184,6 +474,7 @@ public class App {
 
             if (confirm.equals("s")) {
               song.setReleaseDate(value);
+              changed = true;
               System.out.println("Informacion: Fecha de lanzamiento modificada.");
             } else {
               System.out.println("Cancelando...");
@@ -197,6 +488,7 @@ public class App {
 
             if (confirm.equals("s")) {
               song.setGenre(value);
+              changed = true;
               System.out.println("Informacion: Genero modificado.");
             } else {
               System.out.println("Cancelando...");
@@ -204,12 +496,17 @@ public class App {
           }
 
           case 6 -> {
-            int[] value = scanner.nextSongLength("Duracion (Minutos:Segundos)");
+            int value = scanner.nextSongLength("Duracion (Minutos:Segundos)");
             String confirm = scanner.nextYesNo("Confirmacion: Desea modificar la duracion? (s/n)");
             System.out.println("-".repeat(80));
 
-            if (confirm.equals("s")) {
+            if (Song.sizeOf(value) > Playlist.CAPACITY) {
+              System.out.println("Error: La cancion no puede pesar mas de 450MB.");
+            } else if (confirm.equals("s")) {
+              // El tamano depende de la duracion, igual que al agregar la cancion.
               song.setLength(value);
+              song.setSize(Song.sizeOf(value));
+              changed = true;
               System.out.println("Informacion: Duracion modificada.");
             } else {
               System.out.println("Cancelando...");
@@ -222,7 +519,13 @@ public class App {
 
             if (confirm.equals("s")) {
               song.scan(scanner);
-              System.out.println("Informacion: Cancion sobreescrita.");
+
+              if (song.getSize() > Playlist.CAPACITY) {
+                System.out.println("Error: La cancion no puede pesar mas de 450MB.");
+              } else {
+                changed = true;
+                System.out.println("Informacion: Cancion sobreescrita.");
+              }
             } else {
               System.out.println("Cancelando...");
 
@@ -233,6 +536,14 @@ public class App {
             System.out.println("Cancelando...");
           }
         }
+
+        try {
+          if (changed && !update(song.getId(), song)) {
+            System.out.println("Error: La cancion ya no existe.");
+          }
+        } catch (IllegalArgumentException e) {
+          System.out.println("Error: " + e.getMessage());
+        }
       } else {
         System.out.println("Error: Opcion Invalida");
       }
@@ -246,23 +557,28 @@ public class App {
    */
   public void removeSong() {
     int option = 0;
+    loader.await();
+    SongTable songs = catalog.snapshot();
 
     if (!songs.isEmpty()) {
       System.out.println("Canciones disponibles:");
       System.out.println("-".repeat(80));
 
-      for (int i = 0; i < songs.size(); i++) {
-        System.out.println(i + 1 + ". " + songs.get(i).getArtist() + " - " + songs.get(i).getTitle());
-      }
-
-      System.out.println("-".repeat(80));
-
-      option = scanner.nextInt("Cancion a borrar");
+      option = SongCursor.of(songs).select(scanner, "Cancion a borrar");
       System.out.println("-".repeat(80));
 
       if (option > 0 && option <= songs.size()) {
-        songs.remove(option - 1);
-        System.out.println("Informacion: Cancion borrada.");
+        int discs = remove(songs.id(option - 1));
+
+        if (discs < 0) {
+          System.out.println("Error: La cancion ya no existe.");
+        } else {
+          System.out.println("Informacion: Cancion borrada.");
+        }
+
+        if (discs > 0) {
+          System.out.println("Informacion: La cancion tambien se quito de %d discos.".formatted(discs));
+        }
       } else {
         System.out.println("Error: Opcion Invalida");
       }
@@ -278,11 +594,12 @@ public class App {
    */
   public void addSong() {
     String option = "";
+    loader.await();
 
     Song song = new Song();
     song.scan(scanner);
 
-    if (Float.parseFloat(song.getSize()) > 450) {
+    if (song.getSize() > Playlist.CAPACITY) {
       System.out.println("Error: La cancion no puede pesar mas de 450MB.");
       return;
     } else {
@@ -291,7 +608,8 @@ public class App {
       System.out.println("-".repeat(80));
 
       if (option.equals("s")) {
-        songs.add(song);
+        add(song);
+
         System.out.println("Cancion '%s' agregada.".formatted(song.getTitle()));
       } else {
         System.out.println("Cancelando...");
@@ -299,6 +617,26 @@ public class App {
     }
   }
 
+  /**
+   * Solicita un archivo CSV o JSON Lines e importa sus canciones.
+   */
+  public void importSongs() {
+    loader.await();
+
+    Path path = Path.of(scanner.nextLine("Archivo a importar (.csv o .jsonl)", 255));
+
+    if (!Files.isRegularFile(path)) {
+      System.out.println("Error: No existe el archivo.");
+      return;
+    }
+
+    try {
+      System.out.println("Informacion: " + CatalogImporter.importFile(this, path));
+    } catch (IOException e) {
+      System.out.println("Error: No se pudo leer el archivo (" + e.getMessage() + ").");
+    }
+  }
+
   /**
    * Despliega un menu para grabar un disco. Al final, debe preguntar si se desea
    * grabar otro disco, o si se desea cancelar la operacion.
@@ -306,9 +644,11 @@ public class App {
   public void burnCd() {
     int option = 0;
     Playlist playlist;
+    int position = -1;
     boolean shouldSave = false;
+    loader.await();
 
-    if (!songs.isEmpty()) {
+    if (!catalog.read(SongTable::isEmpty)) {
       // Si existe, mostrar un menu con las playlists ya disponibles para grabar
       // almacenadas
       // en el sistema.
@@ -325,23 +665,26 @@ public class App {
         System.out.println("-".repeat(80));
 
         if (option > 0 && option <= playlists.size()) {
-          playlist = playlists.get(option - 1);
+          // Se edita una copia, que reemplaza a la original al finalizar.
+          position = option - 1;
+          playlist = playlists.get(position).copy();
         } else {
-          playlist = new Playlist(scanner.nextLine("ID del disco", 30));
+          playlist = new Playlist(scanner.nextLine("ID del disco", Playlist.MAX_ID_LENGTH));
           shouldSave = true;
         }
       } else {
-        playlist = new Playlist(scanner.nextLine("ID del disco", 30));
+        playlist = new Playlist(scanner.nextLine("ID del disco", Playlist.MAX_ID_LENGTH));
         shouldSave = true;
       }
 
       do {
         System.out.println("Menu del Disco '" + playlist.getId() + "'");
-        System.out.println("Almacenamiento Disponible: %sMB / 450MB".formatted(playlist.getSize()));
+        System.out.println("Almacenamiento Disponible: %sMB / 450MB".formatted(Song.formatSize(playlist.getSize())));
         System.out.println("""
             1. Agregar
             2. Borrar
             3. Mostrar
+            4. Llenar automaticamente
             0. Finalizar
             """);
 
@@ -351,12 +694,12 @@ public class App {
         switch (option) {
           case 1 -> {
             String optionQuestion = "";
-            int lastPlaylistSize = playlist.getSongs().size();
+            int lastPlaylistSize = playlist.getSongCount();
 
             do {
-              playlist.scan(scanner, songs);
+              playlist.scan(scanner, catalog);
 
-              if (playlist.getSongs().size() == lastPlaylistSize) {
+              if (playlist.getSongCount() == lastPlaylistSize) {
                 optionQuestion = "n";
               } else {
                 optionQuestion = scanner.nextYesNo("Desea agregar otra cancion? (s/n)");
@@ -367,13 +710,15 @@ public class App {
           case 2 -> {
             int removeOption = 0;
 
-            if (!playlist.getSongs().isEmpty()) {
+            if (!playlist.isEmpty()) {
+              List<Song> discSongs = catalog.read(playlist::getSongs);
+
               System.out.println("Canciones en el disco:");
               System.out.println("-".repeat(80));
 
-              for (int i = 0; i < playlist.getSongs().size(); i++) {
-                System.out.println(i + 1 + ". " + playlist.getSongs().get(i).getArtist() + " - "
-                    + playlist.getSongs().get(i).getTitle());
+              for (int i = 0; i < discSongs.size(); i++) {
+                System.out.println(i + 1 + ". " + discSongs.get(i).getArtist() + " - "
+                    + discSongs.get(i).getTitle());
               }
 
               System.out.println("-".repeat(80));
@@ -381,10 +726,8 @@ public class App {
               removeOption = scanner.nextInt("Cancion a borrar");
               System.out.println("-".repeat(80));
 
-              if (removeOption > 0 && removeOption <= playlist.getSongs().size()) {
-                playlist.setSize(playlist.getSize()
-                    - Float.parseFloat(playlist.getSongs().get(removeOption - 1).getSize()));
-                playlist.getSongs().remove(removeOption - 1);
+              if (removeOption > 0 && removeOption <= discSongs.size()) {
+                playlist.removeSong(discSongs.get(removeOption - 1));
 
                 System.out.println("Informacion: Cancion borrada.");
               } else {
@@ -396,11 +739,11 @@ public class App {
           }
 
           case 3 -> {
-            if (!playlist.getSongs().isEmpty()) {
+            if (!playlist.isEmpty()) {
               System.out.println("Canciones en el disco:");
               System.out.println("-".repeat(80));
 
-              for (Song song : playlist.getSongs()) {
+              for (Song song : catalog.read(playlist::getSongs)) {
                 System.out.println(song);
               }
 
@@ -410,6 +753,8 @@ public class App {
             }
           }
 
+          case 4 -> fillCd(playlist);
+
           case 0 -> {
             System.out.println("Finalizando...");
           }
@@ -418,40 +763,22 @@ public class App {
         }
       } while (option != 0);
 
-      if (playlist.getSongs().isEmpty()) {
+      if (playlist.isEmpty()) {
         shouldSave = false;
       }
 
       if (shouldSave) {
-        // Deberia evitar que se guarden discos con el mismo ID
-
-        if (playlists.stream().anyMatch(p -> p.getId().equals(playlist.getId()))) {
-          int copies = 0;
-
-          for (Playlist p : playlists) {
-            if (p.getId().startsWith(playlist.getId())) {
-              copies++;
-            }
-          }
-
-          playlist.setId(playlist.getId() + " #" + copies);
-          playlists.add(playlist);
-        } else {
-          playlists.add(playlist);
-        }
-
+        savePlaylist(-1, playlist);
         System.out.println("Informacion: Nueva playlist '" + playlist.getId() + "' guardada.");
+      } else if (position >= 0) {
+        savePlaylist(position, playlist);
       }
 
-      if (playlist.getSongs().isEmpty()) {
+      if (playlist.isEmpty()) {
         System.out.println("Error: No se puede grabar un disco sin canciones.");
       } else {
         try {
-          FileOutputStream fos = new FileOutputStream("disco.dic");
-          fos.write(playlist.toString().getBytes());
-          fos.close();
-
-          System.out.println("Informacion: Disco grabado.");
+          System.out.println("Informacion: " + burner.burn(playlist, catalog.snapshot()));
         } catch (IOException e) {
           System.out.println("Error: No se pudo guardar el disco.");
         }
@@ -461,11 +788,174 @@ public class App {
     }
   }
 
+  /**
+   * Obtiene los tamanos en KB de las canciones con los IDs dados, que deben
+   * estar en la tabla.
+   */
+  private static int[] sizesOf(SongTable songs, int[] ids) {
+    int[] sizes = new int[ids.length];
+
+    for (int i = 0; i < ids.length; i++) {
+      sizes[i] = songs.size(songs.indexOfId(ids[i]));
+    }
+
+    return sizes;
+  }
+
+  /**
+   * Agrega a un disco las canciones de una busqueda que lo llenan lo mas
+   * posible, sin repetir las que ya tiene.
+   */
+  private void fillCd(Playlist playlist) {
+    System.out.println("Canciones con las que se llenara el disco:");
+    SongCursor candidates = Song.filter(catalog, scanner);
+    System.out.println("-".repeat(80));
+
+    if (candidates == null) {
+      return;
+    }
+
+    int[] ids = Arrays.stream(candidates.ids()).filter(id -> !playlist.contains(id)).toArray();
+    int[] sizes = sizesOf(candidates.table(), ids);
+    int count = playlist.getSongCount();
+    int before = playlist.getSize();
+
+    for (int i : DiscPacker.fill(sizes, Playlist.CAPACITY - before)) {
+      playlist.addSong(ids[i], sizes[i]);
+    }
+
+    System.out.println("Informacion: %d canciones agregadas (%s MB), quedan %s MB libres."
+        .formatted(playlist.getSongCount() - count, Song.formatSize(playlist.getSize() - before),
+            Song.formatSize(Playlist.CAPACITY - playlist.getSize())));
+  }
+
+  /**
+   * Reparte las canciones de una busqueda en la menor cantidad de discos
+   * posible, y los guarda para grabarlos despues.
+   */
+  public void splitCds() {
+    loader.await();
+
+    if (catalog.read(SongTable::isEmpty)) {
+      System.out.println("Error: No hay canciones en el sistema.");
+      return;
+    }
+
+    SongCursor candidates = Song.filter(catalog, scanner);
+    System.out.println("-".repeat(80));
+
+    if (candidates == null) {
+      return;
+    } else if (candidates.isEmpty()) {
+      System.out.println("Error: No se encontraron resultados.");
+      return;
+    }
+
+    String id = scanner.nextLine("ID base de los discos", Playlist.MAX_ID_LENGTH);
+    int[] ids = candidates.ids();
+    int[] sizes = sizesOf(candidates.table(), ids);
+    List<int[]> discs = DiscPacker.split(sizes, Playlist.CAPACITY);
+    int packed = 0;
+
+    synchronized (this) {
+      for (int d = 0; d < discs.size(); d++) {
+        Playlist playlist = new Playlist(playlists.uniqueId(PlaylistRegistry.numbered(id, d + 1)));
+
+        for (int i : discs.get(d)) {
+          playlist.addSong(ids[i], sizes[i]);
+        }
+
+        packed += playlist.getSongCount();
+        playlists.add(playlist);
+        int index = playlists.size() - 1;
+
+        log(Journal.SAVE_PLAYLIST, out -> {
+          out.writeInt(index);
+          playlist.write(out);
+        });
+      }
+    }
+
+    System.out.println("Informacion: %d canciones repartidas en %d discos (minimo posible: %d)."
+        .formatted(packed, discs.size(), DiscPacker.lowerBound(sizes, Playlist.CAPACITY)));
+
+    if (packed < ids.length) {
+      System.out.println("Error: %d canciones no caben en un disco.".formatted(ids.length - packed));
+    }
+  }
+
+  /**
+   * Despliega un menu para grabar a la vez varios de los discos guardados, cada
+   * uno en su propio archivo.
+   */
+  public void burnCds() {
+    loader.await();
+    PlaylistRegistry playlists = this.playlists;
+
+    if (playlists.isEmpty()) {
+      System.out.println("Error: No hay discos guardados.");
+      return;
+    }
+
+    for (int i = 0; i < playlists.size(); i++) {
+      System.out.println(i + 1 + ". " + playlists.get(i).getId());
+    }
+    System.out.println("0. Todos");
+
+    List<Playlist> selected = new ArrayList<>();
+    int option;
+
+    do {
+      // Se acepta el numero del disco o su ID.
+      String value = scanner.nextLine("Disco a grabar (numero o ID, 0 para terminar)", Playlist.MAX_ID_LENGTH);
+      int position = playlists.indexOfId(value);
+
+      try {
+        option = position >= 0 ? position + 1 : Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        option = -1;
+      }
+
+      if (option > 0 && option <= playlists.size()) {
+        selected.add(playlists.get(option - 1));
+      } else if (option == 0 && selected.isEmpty()) {
+        selected.addAll(playlists);
+      } else if (option != 0) {
+        System.out.println("Error: Opcion Invalida");
+      }
+    } while (option != 0);
+
+    selected.removeIf(Playlist::isEmpty);
+    System.out.println("-".repeat(80));
+
+    long start = System.nanoTime();
+    List<DiscBurner.Result> results = burner.burn(selected, catalog.snapshot());
+    long bytes = 0;
+
+    for (DiscBurner.Result result : results) {
+      if (result != null) {
+        System.out.println("Informacion: " + result);
+        bytes += result.bytes();
+      }
+    }
+
+    long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+    System.out.println("Informacion: %d discos grabados, %d bytes en %d ms (%d KB/s)."
+        .formatted(results.stream().filter(result -> result != null).count(), bytes, millis,
+            bytes * 1000 / 1024 / millis));
+  }
+
   /**
    * Despliega un menu para realizar busquedas de canciones.
    */
   public void showSongs() {
     int option = 0;
+    SongTable songs = catalog.snapshot();
+
+    if (!loader.isDone()) {
+      System.out.println("Informacion: El catalogo aun se esta cargando, se muestran las %d canciones cargadas."
+          .formatted(songs.size()));
+    }
 
     if (!songs.isEmpty()) {
       // Debe mostrar dos metodos: por filtro normal, o mostrar todas las canciones
@@ -482,33 +972,31 @@ public class App {
 
       switch (option) {
         case 1 -> {
-          List<Song> result = Song.filter(songs, scanner);
+          SongCursor result = Song.filter(catalog, scanner);
 
           System.out.println("Resultados de la busqueda:");
           System.out.println("-".repeat(80));
 
-          if (!result.isEmpty()) {
-            if (result.get(0).getTitle().isBlank()) {
-              System.out.println("Error: No se encontraron resultados.");
-            } else {
-              for (Song song : result) {
-                System.out.println(song);
-              }
-            }
+          if (result != null && !result.isEmpty()) {
+            result.browse(scanner);
           } else {
             System.out.println("Error: No se encontraron resultados.");
           }
 
           System.out.println("-".repeat(80));
+
+          QueryCache cache = catalog.read(SongTable::cache);
+
+          if (cache != null) {
+            System.out.println("Informacion: " + cache);
+          }
         }
 
         case 2 -> {
           System.out.println("Canciones disponibles:");
           System.out.println("-".repeat(80));
 
-          for (Song song : songs) {
-            System.out.println(song);
-          }
+          SongCursor.of(songs).browse(scanner);
 
           System.out.println("-".repeat(80));
         }
@@ -0,0 +1,351 @@
+package musica;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Ejecuta una secuencia de comandos sobre el catalogo, sin menus ni
+ * confirmaciones, para automatizar el mantenimiento y las pruebas de carga.
+ *
+ * Cada linea es un comando con sus argumentos en formato CSV, como en
+ * {@link CatalogImporter}. Las lineas vacias y las que empiezan con {@code #}
+ * se ignoran. Los comandos son:
+ *
+ * <pre>
+ * add,titulo,duracion,artista,autor,fecha,genero
+ * remove,id
+ * update,id,campo,valor[,campo,valor...]
+ * search[,campo,valor...]
+ * burn,disco[,id...]
+ * </pre>
+ *
+ * Los campos de {@code update} son los de la importacion: {@code titulo},
+ * {@code duracion}, {@code artista}, {@code autor}, {@code fecha} y
+ * {@code genero}, validados con las mismas reglas. {@code search} acepta
+ * ademas {@code tamano} (en MB), y en {@code fecha}, {@code duracion} y
+ * {@code tamano} un rango {@code desde..hasta}, cuyos extremos se pueden
+ * omitir. {@code burn} con IDs de canciones guarda un disco nuevo con ellas
+ * antes de grabarlo; sin ellos, graba el disco guardado con ese ID.
+ *
+ * Por cada comando se escribe una linea CSV con el numero de linea, {@code ok}
+ * y el resultado, o {@code error} y el motivo:
+ *
+ * <pre>
+ * add:    n,ok,id
+ * remove: n,ok,id,discos de los que se quito
+ * update: n,ok,id
+ * search: n,ok,total,id...
+ * burn:   n,ok,disco,archivo,bytes
+ * </pre>
+ */
+public class BatchRunner {
+
+    private final App app;
+    private final PrintStream out;
+    private long commands;
+    private long errors;
+
+    /**
+     * @param app Aplicacion sobre la que se ejecutan los comandos.
+     * @param out Destino de los resultados.
+     */
+    public BatchRunner(App app, PrintStream out) {
+        this.app = app;
+        this.out = out;
+    }
+
+    /**
+     * Ejecuta los comandos de una entrada hasta que termina.
+     *
+     * @return El numero de comandos que fallaron.
+     */
+    public long run(BufferedReader in) throws IOException {
+        app.loader.await();
+
+        long start = System.nanoTime();
+        long number = 0;
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            number++;
+
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+
+            commands++;
+
+            try {
+                out.println(number + ",ok" + execute(CatalogImporter.csvValues(line)));
+            } catch (IllegalArgumentException e) {
+                errors++;
+                out.println(number + ",error," + quote(e.getMessage()));
+            }
+        }
+
+        out.flush();
+
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println("Informacion: %d comandos (%d con error) en %d ms (%d comandos/s)."
+                .formatted(commands, errors, millis, commands * 1000 / millis));
+
+        return errors;
+    }
+
+    /**
+     * Ejecuta un comando.
+     *
+     * @return El resultado, con una coma antes de cada valor.
+     * @throws IllegalArgumentException Si el comando no es valido o no se pudo
+     *                                  ejecutar, con el motivo.
+     */
+    private String execute(String[] values) {
+        return switch (values[0].trim()) {
+            case "add" -> add(values);
+            case "remove" -> remove(values);
+            case "update" -> update(values);
+            case "search" -> search(values);
+            case "burn" -> burn(values);
+            default -> throw new IllegalArgumentException("Comando desconocido: " + values[0] + ".");
+        };
+    }
+
+    private String add(String[] values) {
+        arguments(values, 6);
+        Song song = CatalogImporter.song(Arrays.copyOfRange(values, 1, values.length));
+
+        app.add(song);
+        return "," + song.getId();
+    }
+
+    private String remove(String[] values) {
+        arguments(values, 1);
+        int id = number(values[1]);
+        int discs = app.remove(id);
+
+        if (discs < 0) {
+            throw missing(id);
+        }
+
+        return "," + id + "," + discs;
+    }
+
+    private String update(String[] values) {
+        if (values.length < 4 || values.length % 2 != 0) {
+            throw new IllegalArgumentException("Se esperaba el ID y pares de campo y valor.");
+        }
+
+        int id = number(values[1]);
+
+        // Se modifica una copia, que solo reemplaza a la original si todos los
+        // campos son validos.
+        Song song = app.update(id, copy -> {
+            for (int i = 2; i < values.length; i += 2) {
+                set(copy, values[i].trim(), values[i + 1]);
+            }
+        });
+
+        if (song == null) {
+            throw missing(id);
+        }
+
+        return "," + id;
+    }
+
+    private String search(String[] values) {
+        if (values.length % 2 != 1) {
+            throw new IllegalArgumentException("Se esperaban pares de campo y valor.");
+        }
+
+        SongQuery query = new SongQuery();
+
+        for (int i = 1; i < values.length; i += 2) {
+            criterion(query, values[i].trim(), values[i + 1]);
+        }
+
+        IdBitmap ids = app.catalog.read(query::ids);
+        StringBuilder result = new StringBuilder(12 + ids.cardinality() * 8);
+        result.append(',').append(ids.cardinality());
+        ids.forEach(id -> result.append(',').append(id));
+
+        return result.toString();
+    }
+
+    private String burn(String[] values) {
+        if (values.length < 2) {
+            throw new IllegalArgumentException("Falta el ID del disco.");
+        }
+
+        String id = InteractiveScanner.parseLine(values[1], Playlist.MAX_ID_LENGTH);
+        Playlist playlist;
+
+        if (values.length == 2) {
+            playlist = app.playlists.byId(id);
+
+            if (playlist == null) {
+                throw new IllegalArgumentException("No existe el disco '" + id + "'.");
+            }
+        } else {
+            playlist = new Playlist(id);
+
+            // Sincronizado sobre la aplicacion, ninguna cancion se puede borrar
+            // antes de guardar el disco.
+            synchronized (app) {
+                for (int i = 2; i < values.length; i++) {
+                    int songId = number(values[i]);
+                    int size = app.catalog.read(songs -> {
+                        int index = songs.indexOfId(songId);
+                        return index >= 0 ? songs.size(index) : -1;
+                    });
+
+                    if (size < 0) {
+                        throw missing(songId);
+                    }
+
+                    if (playlist.getSize() + size > Playlist.CAPACITY) {
+                        throw new IllegalArgumentException(
+                                "La cancion " + songId + " excede el tamano maximo de la lista de reproduccion.");
+                    } else if (!playlist.addSong(songId, size)) {
+                        throw new IllegalArgumentException("La cancion " + songId + " esta repetida.");
+                    }
+                }
+
+                app.savePlaylist(-1, playlist);
+            }
+        }
+
+        if (playlist.isEmpty()) {
+            throw new IllegalArgumentException("No se puede grabar un disco sin canciones.");
+        }
+
+        try {
+            DiscBurner.Result result = app.burner.burn(playlist, app.catalog.snapshot());
+            return "," + quote(playlist.getId()) + "," + quote(result.path().toString()) + "," + result.bytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("No se pudo guardar el disco (" + e.getMessage() + ").");
+        }
+    }
+
+    /**
+     * Cambia un campo de una cancion, validando el valor.
+     */
+    static void set(Song song, String field, String value) {
+        try {
+            switch (field) {
+                case "titulo" -> song.setTitle(InteractiveScanner.parseLine(value, 30));
+                case "artista" -> song.setArtist(InteractiveScanner.parseLineAlphabetic(value, 20));
+                case "autor" -> song.setAuthor(InteractiveScanner.parseLineAlphabetic(value, 20));
+                case "fecha" -> song.setReleaseDate(InteractiveScanner.parseDate(value));
+                case "genero" -> song.setGenre(InteractiveScanner.parseLineAlphabetic(value, 20));
+                case "duracion" -> {
+                    int length = InteractiveScanner.parseSongLength(value);
+
+                    if (Song.sizeOf(length) > Playlist.CAPACITY) {
+                        throw new IllegalArgumentException("La cancion no puede pesar mas de 450MB.");
+                    }
+
+                    song.setLength(length);
+                    song.setSize(Song.sizeOf(length));
+                }
+                default -> throw new IllegalArgumentException("Campo desconocido.");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(field + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Agrega a una busqueda el criterio de un campo.
+     */
+    static void criterion(SongQuery query, String field, String value) {
+        try {
+            switch (field) {
+                case "titulo" -> query.containing(CatalogFile.TITLE, InteractiveScanner.parseLine(value, 30));
+                case "artista" -> query.containing(CatalogFile.ARTIST, InteractiveScanner.parseLineAlphabetic(value, 20));
+                case "autor" -> query.containing(CatalogFile.AUTHOR, InteractiveScanner.parseLineAlphabetic(value, 20));
+                case "genero" -> query.genre(InteractiveScanner.parseLineAlphabetic(value, 20));
+                case "fecha" -> {
+                    int[] range = range(value, text -> (int) InteractiveScanner.parseDate(text).toEpochDay(),
+                            Integer.MIN_VALUE + 1, Integer.MAX_VALUE);
+                    query.releasedBetween(range[0], range[1]);
+                }
+                case "duracion" -> {
+                    int[] range = range(value, InteractiveScanner::parseSongLength, 0, Integer.MAX_VALUE);
+                    query.lastingBetween(range[0], range[1]);
+                }
+                case "tamano" -> {
+                    int[] range = range(value, BatchRunner::size, 0, Integer.MAX_VALUE);
+                    query.sizedBetween(range[0], range[1]);
+                }
+                default -> throw new IllegalArgumentException("Campo desconocido.");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(field + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lee un valor o un rango {@code desde..hasta}, en el que se puede omitir
+     * cualquiera de los extremos.
+     *
+     * @return Los extremos del rango, incluidos.
+     */
+    private static int[] range(String value, ToIntFunction<String> parser, int min, int max) {
+        int separator = value.indexOf("..");
+
+        if (separator < 0) {
+            int single = parser.applyAsInt(value.trim());
+            return new int[] { single, single };
+        }
+
+        String from = value.substring(0, separator).trim();
+        String to = value.substring(separator + 2).trim();
+
+        return new int[] { from.isEmpty() ? min : parser.applyAsInt(from), to.isEmpty() ? max : parser.applyAsInt(to) };
+    }
+
+    /**
+     * Lee un tamano en MB.
+     *
+     * @return El tamano en KB.
+     */
+    private static int size(String value) {
+        try {
+            return Song.parseSize(value);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("El valor no es valido.");
+        }
+    }
+
+    private static IllegalArgumentException missing(int id) {
+        return new IllegalArgumentException("No existe la cancion " + id + ".");
+    }
+
+    private static void arguments(String[] values, int count) {
+        if (values.length != count + 1) {
+            throw new IllegalArgumentException("Se esperaban " + count + " argumentos, pero hay " + (values.length - 1) + ".");
+        }
+    }
+
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El ID no es valido: " + value + ".");
+        }
+    }
+
+    /**
+     * Pone un valor entre comillas si contiene comas o comillas.
+     */
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,167 @@
+package musica;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Catalogo de canciones compartido entre varios hilos, en el que las
+ * busquedas no esperan a los cambios ni los cambios a las busquedas en curso.
+ *
+ * Se mantienen dos copias del {@link SongTable}, cada una con su indice de
+ * busqueda (tecnica "left-right"). Los lectores usan siempre la copia activa,
+ * y solo anotan su entrada y su salida en un contador, sin bloqueos. Los
+ * cambios se hacen de uno en uno: primero se aplican a la copia que nadie esta
+ * leyendo, que pasa a ser la activa, y una vez que salen los lectores que
+ * quedaban en la otra se aplican tambien a ella. Por eso cada cambio se aplica
+ * dos veces, y debe producir lo mismo en ambas copias.
+ *
+ * Las dos copias comparten un {@link QueryCache}, de modo que una busqueda
+ * repetida lo aprovecha sin importar cual copia este activa. Cada cambio lo
+ * invalida una sola vez, y mientras se aplica el cache no guarda resultados,
+ * que podrian venir de la copia anterior.
+ *
+ * Los lectores no deben conservar la tabla despues de {@link #read}: para
+ * recorrerla con calma, como al mostrar un listado por paginas, se usa una
+ * copia de {@link #snapshot()}.
+ *
+ * Mientras se carga, el catalogo se publica con {@link #publish(SongTable)}
+ * como una sola tabla sin indice, que nadie modifica.
+ */
+public class Catalog {
+
+    private final SongTable[] tables = new SongTable[2];
+    private final LongAdder[] readers = { new LongAdder(), new LongAdder() };
+
+    /**
+     * Copia que usan los lectores.
+     */
+    private volatile int active;
+
+    /**
+     * Contador en el que los nuevos lectores anotan su entrada.
+     */
+    private volatile int version;
+
+    public Catalog() {
+        this(new SongTable());
+    }
+
+    public Catalog(SongTable songs) {
+        publish(songs);
+    }
+
+    /**
+     * Publica una tabla que ya no se modificara, como una copia parcial de la
+     * carga, para que los lectores la usen mientras tanto.
+     */
+    public synchronized void publish(SongTable songs) {
+        tables[1 - active] = songs;
+        swap();
+        tables[1 - active] = songs;
+    }
+
+    /**
+     * Reemplaza el catalogo por una tabla completa y construye los indices de
+     * busqueda de sus dos copias, en paralelo, con un mismo cache.
+     */
+    public synchronized void load(SongTable songs) {
+        SongTable copy = songs.snapshot();
+        QueryCache cache = new QueryCache();
+        CompletableFuture<Void> building = CompletableFuture.runAsync(() -> copy.buildIndex(cache));
+        songs.buildIndex(cache);
+        building.join();
+
+        tables[1 - active] = songs;
+        swap();
+        tables[1 - active] = copy;
+    }
+
+    /**
+     * Lee el catalogo sin bloquearse, aunque haya un cambio en curso.
+     *
+     * @param reader Lectura, que no debe modificar la tabla ni conservarla.
+     * @return El resultado de la lectura.
+     */
+    public <T> T read(Function<SongTable, T> reader) {
+        int current = version;
+        readers[current].increment();
+
+        try {
+            return reader.apply(tables[active]);
+        } finally {
+            readers[current].decrement();
+        }
+    }
+
+    /**
+     * Obtiene una copia de las canciones en su estado actual, que no cambia con
+     * los cambios posteriores y no tiene indice de busqueda.
+     */
+    public SongTable snapshot() {
+        return read(SongTable::snapshot);
+    }
+
+    /**
+     * Aplica un cambio a las dos copias del catalogo. Los cambios se hacen de
+     * uno en uno; las lecturas en curso no se interrumpen, y las nuevas ven el
+     * cambio completo desde que termina la primera aplicacion.
+     *
+     * @param change Cambio, que se aplica una vez a cada copia y debe producir
+     *               lo mismo en ambas.
+     * @return El resultado de la primera aplicacion.
+     */
+    public synchronized <T> T write(Function<SongTable, T> change) {
+        int idle = 1 - active;
+        QueryCache cache = tables[idle].cache();
+
+        if (cache != null) {
+            cache.beginWrite();
+        }
+
+        try {
+            T result = change.apply(tables[idle]);
+
+            if (tables[idle] != tables[active]) {
+                swap();
+
+                if (cache != null) {
+                    cache.secondCopy();
+                }
+
+                change.apply(tables[1 - active]);
+            }
+
+            return result;
+        } finally {
+            if (cache != null) {
+                cache.endWrite();
+            }
+        }
+    }
+
+    /**
+     * Cambia la copia activa y espera a que salgan los lectores de la otra.
+     */
+    private void swap() {
+        active = 1 - active;
+
+        // Un lector pudo leer la copia anterior despues de anotarse en
+        // cualquiera de los dos contadores: se mueven los nuevos lectores al
+        // otro contador y se espera a que ambos queden vacios.
+        int previous = version;
+        drain(1 - previous);
+        version = 1 - previous;
+        drain(previous);
+    }
+
+    private void drain(int counter) {
+        for (int spins = 0; readers[counter].sum() != 0; spins++) {
+            if (spins < 1000) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+}
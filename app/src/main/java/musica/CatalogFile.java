@@ -0,0 +1,527 @@
+package musica;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Archivo de respaldo del catalogo en formato columnar.
+ *
+ * Cada atributo de las canciones se guarda en su propia columna: el ID, la
+ * duracion, la fecha y el tamano en columnas de ancho fijo, y el titulo en un
+ * bloque de bytes UTF-8 con una columna de posiciones por fila. El artista, el
+ * autor y el genero, que se repiten mucho, se guardan como codigos de un
+ * diccionario con cada texto distinto una sola vez. El archivo se abre con {@link FileChannel#map}, de modo
+ * que abrirlo no depende del numero de canciones: cada fila se lee solo cuando
+ * se necesita.
+ *
+ * Estructura del archivo:
+ *
+ * <pre>
+ * encabezado   magic, version, lsn, filas, siguiente ID y la posicion de
+ *              cada columna
+ * IDs          int[filas], en orden creciente
+ * duraciones   int[filas], en segundos
+ * fechas       int[filas], en dias desde 1970-01-01
+ * tamanos      int[filas], en KB
+ * titulos      bytes UTF-8 e int[filas + 1] con la posicion de cada fila en
+ *              esos bytes
+ * codigos      int[filas] por cada columna de artista, autor y genero
+ * diccionario  bytes UTF-8 e int[textos + 1] con la posicion de cada texto
+ * playlists    numero de playlists y, por cada una, su ID, tamano y los IDs
+ *              de sus canciones
+ * </pre>
+ *
+ * Al abrir el archivo, los textos del diccionario se agregan a
+ * {@link StringPool#CATALOG}, y los codigos del archivo se traducen a los de
+ * ese diccionario.
+ *
+ * Como el archivo se lee con un solo {@link ByteBuffer}, no puede superar
+ * {@link Integer#MAX_VALUE} bytes; un archivo mas grande, o con posiciones
+ * fuera de ese limite, se rechaza al abrirlo o al escribirlo.
+ */
+public class CatalogFile {
+
+    public static final int TITLE = 0;
+    public static final int ARTIST = 1;
+    public static final int AUTHOR = 2;
+    public static final int GENRE = 3;
+
+    /**
+     * Valor de la columna de fechas para canciones sin fecha de lanzamiento.
+     */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x4D555343;
+    private static final int VERSION = 1;
+    private static final int STRINGS = 4;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8 * 4 + 8 * 2 + 8 * 3 + 8 * 2 + 4 + 8;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final long lsn;
+    private final int rows;
+    private final int nextId;
+    private final int ids;
+    private final int lengths;
+    private final int dates;
+    private final int sizes;
+    private final int titles;
+    private final int titleOffsets;
+    private final int[] codes = new int[STRINGS];
+    private final int[] dictionary;
+    private final int playlists;
+
+    private CatalogFile(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < 8 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("El archivo no es un catalogo.");
+        }
+
+        int version = buffer.getInt(4);
+
+        if (version != VERSION) {
+            throw new IOException("Version de catalogo no soportada: " + version);
+        }
+
+        ByteBuffer header = buffer.duplicate().position(8);
+        lsn = header.getLong();
+        rows = header.getInt();
+        nextId = header.getInt();
+        ids = offset(header);
+        lengths = offset(header);
+        dates = offset(header);
+        sizes = offset(header);
+        titles = offset(header);
+        titleOffsets = offset(header);
+
+        for (int column = ARTIST; column < STRINGS; column++) {
+            codes[column] = offset(header);
+        }
+
+        int heap = offset(header);
+        int positions = offset(header);
+        dictionary = new int[header.getInt()];
+
+        for (int i = 0; i < dictionary.length; i++) {
+            int start = buffer.getInt(positions + i * 4);
+            byte[] bytes = new byte[buffer.getInt(positions + i * 4 + 4) - start];
+            buffer.get(heap + start, bytes);
+
+            dictionary[i] = StringPool.CATALOG.code(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        playlists = offset(header);
+    }
+
+    /**
+     * Lee del encabezado la posicion de una seccion del archivo.
+     *
+     * @throws IOException Si la posicion no cabe en el archivo mapeado.
+     */
+    private static int offset(ByteBuffer header) throws IOException {
+        long offset = header.getLong();
+
+        if (offset < 0 || offset > Integer.MAX_VALUE) {
+            throw new IOException("Posicion fuera del limite de 2 GB del catalogo: " + offset);
+        }
+
+        return (int) offset;
+    }
+
+    /**
+     * Indica si el archivo esta en formato columnar.
+     *
+     * @param path Ruta del archivo.
+     * @return {@code true} si el archivo comienza con el encabezado del formato.
+     */
+    public static boolean matches(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Abre el archivo mapeandolo en memoria, sin leer ninguna fila.
+     *
+     * @param path Ruta del archivo.
+     * @return El catalogo abierto.
+     */
+    public static CatalogFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("El catalogo supera el limite de 2 GB: " + channel.size() + " bytes");
+            }
+
+            return new CatalogFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Obtiene la ruta del archivo, que permanece mapeado mientras se use.
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Obtiene el ultimo numero de secuencia del diario incluido en el archivo.
+     */
+    public long lsn() {
+        return lsn;
+    }
+
+    /**
+     * Obtiene el numero de canciones del catalogo.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Obtiene el ID que recibira la siguiente cancion agregada al catalogo.
+     */
+    public int nextId() {
+        return nextId;
+    }
+
+    public int id(int row) {
+        return buffer.getInt(ids + row * 4);
+    }
+
+    public int lengthSeconds(int row) {
+        return buffer.getInt(lengths + row * 4);
+    }
+
+    public int epochDay(int row) {
+        return buffer.getInt(dates + row * 4);
+    }
+
+    /**
+     * Obtiene el tamano de la cancion en una fila, en KB.
+     */
+    public int size(int row) {
+        return buffer.getInt(sizes + row * 4);
+    }
+
+    /**
+     * Lee el texto de una columna para una fila.
+     *
+     * @param column Columna de texto ({@link #TITLE}, {@link #ARTIST},
+     *               {@link #AUTHOR} o {@link #GENRE}).
+     * @param row    Fila a leer.
+     * @return El texto guardado.
+     */
+    public String string(int column, int row) {
+        if (column != TITLE) {
+            return StringPool.CATALOG.get(code(column, row));
+        }
+
+        int start = buffer.getInt(titleOffsets + row * 4);
+        int end = buffer.getInt(titleOffsets + row * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        buffer.get(titles + start, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Obtiene el codigo en {@link StringPool#CATALOG} del texto de una columna
+     * para una fila.
+     *
+     * @param column Columna de texto ({@link #ARTIST}, {@link #AUTHOR} o
+     *               {@link #GENRE}).
+     * @param row    Fila a leer.
+     * @return El codigo del texto guardado.
+     */
+    public int code(int column, int row) {
+        int code = buffer.getInt(codes[column] + row * 4);
+        return code < 0 ? code : dictionary[code];
+    }
+
+    private ByteBuffer titleBytes(int row) {
+        int start = buffer.getInt(titleOffsets + row * 4);
+        int end = buffer.getInt(titleOffsets + row * 4 + 4);
+
+        return buffer.slice(titles + start, end - start);
+    }
+
+    /**
+     * Construye la cancion guardada en una fila.
+     *
+     * @param row Fila a leer.
+     * @return Una nueva cancion con los datos de la fila.
+     */
+    public Song song(int row) {
+        Song song = new Song();
+        int seconds = lengthSeconds(row);
+        int epochDay = epochDay(row);
+
+        song.setId(id(row));
+        song.setTitle(string(TITLE, row));
+        song.setLength(seconds);
+        song.setArtistCode(code(ARTIST, row));
+        song.setAuthorCode(code(AUTHOR, row));
+        song.setReleaseDate(epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay));
+        song.setGenreCode(code(GENRE, row));
+        song.setSize(size(row));
+
+        return song;
+    }
+
+    /**
+     * Lee las playlists guardadas.
+     *
+     * @return Las playlists guardadas.
+     */
+    public ArrayList<Playlist> playlists() {
+        ByteBuffer in = buffer.duplicate().position(playlists);
+        int count = in.getInt();
+        ArrayList<Playlist> result = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[in.getShort() & 0xFFFF];
+            in.get(id);
+
+            int size = in.getInt();
+            int[] songIds = new int[in.getInt()];
+
+            for (int j = 0; j < songIds.length; j++) {
+                songIds[j] = in.getInt();
+            }
+
+            result.add(new Playlist(new String(id, StandardCharsets.UTF_8), songIds, songIds.length, size));
+        }
+
+        return result;
+    }
+
+    static int lengthSeconds(Song song) {
+        return song.getLength();
+    }
+
+    static int epochDay(Song song) {
+        return song.getReleaseDate() == null ? NO_DATE : (int) song.getReleaseDate().toEpochDay();
+    }
+
+    static int code(Song song, int column) {
+        return switch (column) {
+            case ARTIST -> song.getArtistCode();
+            case AUTHOR -> song.getAuthorCode();
+            default -> song.getGenreCode();
+        };
+    }
+
+    static String string(Song song, int column) {
+        return switch (column) {
+            case TITLE -> song.getTitle();
+            case ARTIST -> song.getArtist();
+            case AUTHOR -> song.getAuthor();
+            default -> song.getGenre();
+        };
+    }
+
+    /**
+     * Escribe el catalogo y las playlists en formato columnar, en la version
+     * actual. Las filas que no han sido construidas como {@link Song} se copian
+     * directamente del archivo del que provienen.
+     *
+     * @param path      Ruta del archivo a escribir.
+     * @param lsn       Ultimo numero de secuencia del diario incluido.
+     * @param songs     Catalogo a guardar.
+     * @param playlists Playlists a guardar.
+     * @throws IOException Si no se pudo escribir, o si el archivo superaria el
+     *                     limite de 2 GB.
+     */
+    public static void write(Path path, long lsn, SongTable songs, List<Playlist> playlists) throws IOException {
+        int rows = songs.size();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Sink out = new Sink(channel, HEADER_SIZE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(lsn).putInt(rows).putInt(songs.nextId());
+
+            header.putLong(out.position());
+            for (int i = 0; i < rows; i++) {
+                out.putInt(songs.id(i));
+            }
+
+            header.putLong(out.position());
+            for (int i = 0; i < rows; i++) {
+                Song song = songs.cached(i);
+                out.putInt(song != null ? lengthSeconds(song) : songs.file().lengthSeconds(songs.row(i)));
+            }
+
+            header.putLong(out.position());
+            for (int i = 0; i < rows; i++) {
+                Song song = songs.cached(i);
+                out.putInt(song != null ? epochDay(song) : songs.file().epochDay(songs.row(i)));
+            }
+
+            header.putLong(out.position());
+            for (int i = 0; i < rows; i++) {
+                Song song = songs.cached(i);
+                out.putInt(song != null ? song.getSize() : songs.file().size(songs.row(i)));
+            }
+
+            writeStrings(out, header, rows, i -> {
+                Song song = songs.cached(i);
+                return song != null
+                        ? ByteBuffer.wrap(song.getTitle().getBytes(StandardCharsets.UTF_8))
+                        : songs.file().titleBytes(songs.row(i));
+            });
+
+            // Codigo en el archivo + 1 de cada codigo del diccionario; solo se
+            // guardan los textos que usa alguna cancion.
+            int[] fileCodes = new int[StringPool.CATALOG.size()];
+            ArrayList<String> dictionary = new ArrayList<>();
+
+            for (int column = ARTIST; column < STRINGS; column++) {
+                header.putLong(out.position());
+
+                for (int i = 0; i < rows; i++) {
+                    int code = songs.code(column, i);
+
+                    if (code >= fileCodes.length) {
+                        fileCodes = Arrays.copyOf(fileCodes, Math.max(code + 1, fileCodes.length * 2));
+                    }
+
+                    if (code >= 0 && fileCodes[code] == 0) {
+                        dictionary.add(StringPool.CATALOG.get(code));
+                        fileCodes[code] = dictionary.size();
+                    }
+
+                    out.putInt(code < 0 ? -1 : fileCodes[code] - 1);
+                }
+            }
+
+            writeStrings(out, header, dictionary.size(),
+                    i -> ByteBuffer.wrap(dictionary.get(i).getBytes(StandardCharsets.UTF_8)));
+            header.putInt(dictionary.size());
+
+            header.putLong(out.position());
+            out.putInt(playlists.size());
+
+            for (Playlist playlist : playlists) {
+                byte[] id = playlist.getId().getBytes(StandardCharsets.UTF_8);
+                out.putShort((short) id.length);
+                out.put(ByteBuffer.wrap(id));
+                out.putInt(playlist.getSize());
+                out.putInt(playlist.getSongCount());
+
+                for (int songId : playlist.getSongIds()) {
+                    out.putInt(songId);
+                }
+            }
+
+            out.flush();
+
+            if (out.position() > Integer.MAX_VALUE) {
+                throw new IOException("El catalogo supera el limite de 2 GB: " + out.position() + " bytes");
+            }
+
+            channel.write(header.flip(), 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Escribe un bloque de textos seguido de la posicion de cada uno, y anota
+     * ambas posiciones en el encabezado.
+     */
+    private static void writeStrings(Sink out, ByteBuffer header, int count, IntFunction<ByteBuffer> strings)
+            throws IOException {
+        int[] starts = new int[count + 1];
+        long heap = out.position();
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer bytes = strings.apply(i);
+
+            starts[i + 1] = starts[i] + bytes.remaining();
+            out.put(bytes);
+        }
+
+        header.putLong(heap);
+        header.putLong(out.position());
+
+        for (int start : starts) {
+            out.putInt(start);
+        }
+    }
+
+    /**
+     * Escritura secuencial con buffer sobre un canal, que lleva la cuenta de la
+     * posicion en el archivo.
+     */
+    private static class Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position;
+
+        Sink(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.position = position;
+            channel.position(position);
+        }
+
+        long position() {
+            return position + buffer.position();
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(2);
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void put(ByteBuffer bytes) throws IOException {
+            if (bytes.remaining() > buffer.remaining()) {
+                flush();
+            }
+
+            if (bytes.remaining() > buffer.remaining()) {
+                position += bytes.remaining();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } else {
+                buffer.put(bytes);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            position += buffer.remaining();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package musica;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Importa canciones desde un archivo CSV o JSON Lines, sin pasar por el menu.
+ *
+ * Cada linea es una cancion con los campos {@code titulo}, {@code duracion}
+ * (minutos:segundos), {@code artista}, {@code autor}, {@code fecha}
+ * (dd/mm/aaaa) y {@code genero}: en CSV, en ese orden y opcionalmente con una
+ * primera linea de encabezado; en JSON Lines, como un objeto con esas llaves.
+ * Se validan con las mismas reglas que {@link InteractiveScanner} y el mismo
+ * limite de tamano que al agregar una cancion desde el menu.
+ *
+ * El archivo se lee en bloques de {@link #BATCH_SIZE} lineas. Cada bloque se
+ * valida en paralelo mientras se lee el siguiente, y sus canciones validas se
+ * agregan al catalogo juntas, con un solo registro en el diario. Las lineas
+ * rechazadas se escriben en un archivo {@code .rechazos} junto al original,
+ * con su numero, el motivo y la linea separados por tabuladores.
+ */
+public class CatalogImporter {
+
+    /**
+     * Lineas que se validan y agregan juntas.
+     */
+    public static final int BATCH_SIZE = 10_000;
+
+    static final String[] FIELDS = { "titulo", "duracion", "artista", "autor", "fecha", "genero" };
+
+    /**
+     * Resultado de una importacion.
+     */
+    public record Summary(long added, long rejected, Path rejects, long nanos) {
+
+        @Override
+        public String toString() {
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+
+            return "Importacion terminada: %d canciones agregadas y %d rechazadas (ver %s) en %d ms (%d filas/s)."
+                    .formatted(added, rejected, rejects, millis, (added + rejected) * 1000 / millis);
+        }
+    }
+
+    private record Line(long number, String text) {
+    }
+
+    private record Row(Line line, Song song, String error) {
+    }
+
+    private final App app;
+    private final boolean json;
+    private long added;
+    private long rejected;
+
+    /**
+     * @param app  Aplicacion a la que se agregan las canciones.
+     * @param json {@code true} si el archivo es JSON Lines, {@code false} si es
+     *             CSV.
+     */
+    public CatalogImporter(App app, boolean json) {
+        this.app = app;
+        this.json = json;
+    }
+
+    /**
+     * Importa un archivo, eligiendo el formato por su extension ({@code .jsonl}
+     * o cualquier otra para CSV).
+     *
+     * @param app  Aplicacion a la que se agregan las canciones.
+     * @param path Archivo a importar.
+     * @return El resultado de la importacion.
+     */
+    public static Summary importFile(App app, Path path) throws IOException {
+        boolean json = path.getFileName().toString().toLowerCase().endsWith(".jsonl");
+        return new CatalogImporter(app, json).read(path);
+    }
+
+    /**
+     * Importa las canciones de un archivo.
+     *
+     * @param path Archivo a importar.
+     * @return El resultado de la importacion.
+     */
+    public Summary read(Path path) throws IOException {
+        long start = System.nanoTime();
+        Path rejectsPath = path.resolveSibling(path.getFileName() + ".rechazos");
+
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+                BufferedWriter rejects = Files.newBufferedWriter(rejectsPath, StandardCharsets.UTF_8)) {
+            CompletableFuture<List<Row>> pending = null;
+            List<Line> batch = new ArrayList<>(BATCH_SIZE);
+            long number = 0;
+            String text;
+
+            while ((text = in.readLine()) != null) {
+                number++;
+
+                if (text.isBlank() || (number == 1 && !json && text.toLowerCase().startsWith(FIELDS[0] + ","))) {
+                    continue;
+                }
+
+                batch.add(new Line(number, text));
+
+                if (batch.size() == BATCH_SIZE) {
+                    CompletableFuture<List<Row>> next = validate(batch);
+
+                    if (pending != null) {
+                        append(pending.join(), rejects);
+                    }
+
+                    pending = next;
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+
+            if (pending != null) {
+                append(pending.join(), rejects);
+            }
+
+            append(validate(batch).join(), rejects);
+        }
+
+        return new Summary(added, rejected, rejectsPath, System.nanoTime() - start);
+    }
+
+    private CompletableFuture<List<Row>> validate(List<Line> lines) {
+        return CompletableFuture.supplyAsync(() -> lines.parallelStream().map(this::validate).toList());
+    }
+
+    private Row validate(Line line) {
+        try {
+            return new Row(line, song(json ? jsonFields(line.text()) : csvFields(line.text())), null);
+        } catch (IllegalArgumentException e) {
+            return new Row(line, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Agrega al catalogo las canciones validas de un bloque y escribe las
+     * rechazadas.
+     */
+    private void append(List<Row> rows, BufferedWriter rejects) throws IOException {
+        List<Song> songs = new ArrayList<>(rows.size());
+
+        for (Row row : rows) {
+            if (row.song() != null) {
+                songs.add(row.song());
+            } else {
+                rejects.write(row.line().number() + "\t" + row.error() + "\t" + row.line().text());
+                rejects.newLine();
+                rejected++;
+            }
+        }
+
+        if (songs.isEmpty()) {
+            return;
+        }
+
+        synchronized (app) {
+            app.catalog.write(table -> table.addAll(songs));
+            app.log(Journal.ADD_SONGS, out -> {
+                out.writeInt(songs.size());
+
+                for (Song song : songs) {
+                    song.write(out);
+                }
+            });
+        }
+
+        added += songs.size();
+    }
+
+    /**
+     * Construye una cancion a partir de sus campos, validandolos.
+     *
+     * @throws IllegalArgumentException Si algun campo no es valido, con el
+     *                                  campo y el motivo.
+     */
+    static Song song(String[] values) {
+        Song song = new Song();
+        int length = field(values, 1, InteractiveScanner::parseSongLength);
+
+        song.setTitle(field(values, 0, value -> InteractiveScanner.parseLine(value, 30)));
+        song.setLength(length);
+        song.setArtist(field(values, 2, value -> InteractiveScanner.parseLineAlphabetic(value, 20)));
+        song.setAuthor(field(values, 3, value -> InteractiveScanner.parseLineAlphabetic(value, 20)));
+        song.setReleaseDate(field(values, 4, InteractiveScanner::parseDate));
+        song.setGenre(field(values, 5, value -> InteractiveScanner.parseLineAlphabetic(value, 20)));
+        song.setSize(Song.sizeOf(length));
+
+        if (song.getSize() > Playlist.CAPACITY) {
+            throw new IllegalArgumentException("La cancion no puede pesar mas de 450MB.");
+        }
+
+        return song;
+    }
+
+    private static <T> T field(String[] values, int index, Function<String, T> parser) {
+        if (values[index] == null) {
+            throw new IllegalArgumentException(FIELDS[index] + ": Falta el campo.");
+        }
+
+        try {
+            return parser.apply(values[index]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(FIELDS[index] + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Separa una linea CSV en los campos de una cancion.
+     */
+    static String[] csvFields(String line) {
+        String[] fields = csvValues(line);
+
+        if (fields.length != FIELDS.length) {
+            throw new IllegalArgumentException(
+                    "Se esperaban " + FIELDS.length + " columnas, pero hay " + fields.length + ".");
+        }
+
+        return fields;
+    }
+
+    /**
+     * Separa una linea CSV en sus campos, los que tenga. Un campo puede ir
+     * entre comillas dobles para contener comas, y {@code ""} dentro de el es
+     * una comilla.
+     */
+    static String[] csvValues(String line) {
+        List<String> fields = new ArrayList<>(FIELDS.length);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Comillas sin cerrar.");
+        }
+
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Lee los campos de un objeto JSON de una linea, cuyos valores deben ser
+     * textos. Los campos que no tiene quedan en {@code null}, y las llaves
+     * desconocidas se ignoran.
+     */
+    static String[] jsonFields(String line) {
+        Map<String, String> object = jsonObject(line);
+        String[] values = new String[FIELDS.length];
+
+        for (int i = 0; i < FIELDS.length; i++) {
+            values[i] = object.get(FIELDS[i]);
+        }
+
+        return values;
+    }
+
+    /**
+     * Lee un objeto JSON de una linea, cuyos valores deben ser textos.
+     *
+     * @throws IllegalArgumentException Si no es un objeto valido.
+     */
+    static Map<String, String> jsonObject(String line) {
+        return new JsonObjectReader(line).read();
+    }
+
+    /**
+     * Lector de un objeto JSON plano, con solo textos como valores.
+     */
+    private static class JsonObjectReader {
+        private final String text;
+        private int position;
+
+        JsonObjectReader(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> read() {
+            Map<String, String> object = new HashMap<>();
+            expect('{');
+
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    String key = string();
+                    expect(':');
+                    object.put(key, string());
+                } while (next() == ',');
+
+                position--;
+                expect('}');
+            }
+
+            if (peek() != 0) {
+                throw new IllegalArgumentException("JSON invalido: contenido despues del objeto.");
+            }
+
+            return object;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+
+            while (true) {
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("JSON invalido: texto sin cerrar.");
+                }
+
+                char c = text.charAt(position++);
+
+                if (c == '"') {
+                    return value.toString();
+                } else if (c != '\\') {
+                    value.append(c);
+                } else if (position >= text.length()) {
+                    throw new IllegalArgumentException("JSON invalido: texto sin cerrar.");
+                } else {
+                    char escaped = text.charAt(position++);
+
+                    switch (escaped) {
+                        case '"', '\\', '/' -> value.append(escaped);
+                        case 'b' -> value.append('\b');
+                        case 'f' -> value.append('\f');
+                        case 'n' -> value.append('\n');
+                        case 'r' -> value.append('\r');
+                        case 't' -> value.append('\t');
+                        case 'u' -> {
+                            if (position + 4 > text.length()) {
+                                throw new IllegalArgumentException("JSON invalido: escape incompleto.");
+                            }
+
+                            try {
+                                value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw new IllegalArgumentException("JSON invalido: escape incompleto.");
+                            }
+
+                            position += 4;
+                        }
+                        default -> throw new IllegalArgumentException("JSON invalido: escape desconocido.");
+                    }
+                }
+            }
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("JSON invalido: se esperaba '" + expected + "'.");
+            }
+        }
+
+        /**
+         * Obtiene el siguiente caracter que no es un espacio, o 0 al final.
+         */
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+    }
+}
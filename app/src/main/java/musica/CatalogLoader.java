@@ -0,0 +1,303 @@
+package musica;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga el catalogo en segundo plano, para que el menu este disponible desde
+ * el inicio.
+ *
+ * El respaldo y los cambios del diario se aplican sobre listas propias del
+ * cargador, y cada {@link #PUBLISH_INTERVAL} milisegundos se publica una copia
+ * en la aplicacion; las busquedas hechas mientras tanto usan lo que ya se ha
+ * cargado. Las operaciones que modifican el catalogo deben esperar a que la
+ * carga termine con {@link #await()}.
+ *
+ * Si el diario no se puede leer hasta el final, se conservan los cambios que
+ * se aplicaron antes del error: el diario y sus segmentos se apartan, se abre
+ * uno nuevo y se genera de inmediato un respaldo, para que los cambios
+ * siguientes no dependan de los registros apartados.
+ */
+public class CatalogLoader implements Runnable {
+
+    /**
+     * Intervalo, en milisegundos, entre cada publicacion parcial del catalogo.
+     */
+    public static final long PUBLISH_INTERVAL = 250;
+
+    private final App app;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private SongTable songs;
+    private PlaylistRegistry playlists;
+    private long records;
+    private long replayed;
+    private long lastPublish;
+
+    public CatalogLoader(App app) {
+        this.app = app;
+    }
+
+    /**
+     * Comienza la carga en un hilo aparte.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "catalog-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Indica si la carga ya termino.
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Espera a que termine la carga, avisando al usuario si debe esperar.
+     */
+    public void await() {
+        if (isDone()) {
+            return;
+        }
+
+        System.out.println("Informacion: Esperando a que termine de cargar el catalogo...");
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+
+        try {
+            long lsn = loadBackup();
+            publish();
+            boolean recovered = false;
+
+            try {
+                app.journal = Journal.open(App.JOURNAL, lsn, this::replay);
+            } catch (IOException | RuntimeException e) {
+                System.out.println(("Error: No se pudo leer el diario de cambios (%s); se conservan los %d cambios "
+                        + "aplicados antes del error, y el diario se aparta como respaldo.log.corrupto")
+                        .formatted(e.getMessage(), replayed));
+                recovered = true;
+                reopenJournal(lsn);
+            }
+
+            long indexStart = System.nanoTime();
+            app.catalog.load(songs);
+            System.out.println("Informacion: Indice de busqueda construido en %d ms."
+                    .formatted(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indexStart)));
+
+            app.backupLsn = lsn;
+            app.playlists = playlists;
+
+            if (recovered) {
+                try {
+                    app.checkpointer.checkpoint();
+                } catch (IOException e) {
+                    System.out.println("Error: No se pudo guardar el respaldo de los cambios recuperados.");
+                }
+            }
+
+            long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            System.out.println("Informacion: Catalogo cargado: %d registros en %d ms (%d registros/s)."
+                    .formatted(records, elapsed, records * 1000 / elapsed));
+        } finally {
+            Console.flush();
+            app.checkpointer.start();
+            done.countDown();
+        }
+    }
+
+    /**
+     * Abre el ultimo respaldo, y borra los anteriores. Si no se puede leer, se
+     * aparta para conservarlo y se comienza con un catalogo vacio; el siguiente
+     * respaldo tendra de todos modos una generacion mayor.
+     *
+     * @return El ultimo numero de secuencia del diario incluido en el respaldo.
+     */
+    @SuppressWarnings("unchecked")
+    private long loadBackup() {
+        long lsn = 0;
+        songs = new SongTable();
+        playlists = new PlaylistRegistry();
+        Path backup;
+
+        try {
+            backup = Checkpointer.latest();
+        } catch (IOException e) {
+            System.out.println("Error: No se pudo buscar el respaldo (" + e.getMessage() + ").");
+            return lsn;
+        }
+
+        if (backup == null) {
+            return lsn;
+        }
+
+        app.backup = backup;
+
+        try {
+            if (CatalogFile.matches(backup)) {
+                CatalogFile file = CatalogFile.open(backup);
+
+                songs = new SongTable(file);
+                publish();
+
+                playlists = new PlaylistRegistry(file.playlists());
+                lsn = file.lsn();
+            } else {
+                // Respaldo anterior al formato columnar, serializado como listas.
+                // El flujo se cierra antes de apartar el respaldo si no se puede leer.
+                try (FileInputStream fis = new FileInputStream(backup.toFile());
+                        ObjectInputStream ois = new ObjectInputStream(fis)) {
+                    songs = new SongTable((ArrayList<Song>) ois.readObject());
+                    playlists = new PlaylistRegistry((ArrayList<Playlist>) ois.readObject());
+                }
+
+                for (Playlist playlist : playlists) {
+                    playlist.resolveLegacySongs();
+                }
+            }
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            System.out.println("Error: No se pudo leer el respaldo (" + e.getMessage() + "), se conserva como "
+                    + backup.getFileName() + ".corrupto");
+            moveAside(backup);
+
+            songs = new SongTable();
+            playlists = new PlaylistRegistry();
+            return 0;
+        }
+
+        try {
+            Checkpointer.discard(backup, null);
+        } catch (IOException e) {
+            System.out.println("Error: No se pudieron borrar los respaldos anteriores.");
+        }
+
+        records += songs.size() + playlists.size();
+        return lsn;
+    }
+
+    /**
+     * Publica en la aplicacion una copia de lo cargado hasta el momento.
+     */
+    private void publish() {
+        app.catalog.publish(songs.snapshot());
+        app.playlists = new PlaylistRegistry(playlists);
+        lastPublish = System.nanoTime();
+    }
+
+    /**
+     * Aparta un diario que no se pudo leer y abre uno vacio, que continua desde
+     * el respaldo. Si tampoco se puede abrir, los cambios solo se guardaran al
+     * salir.
+     */
+    private void reopenJournal(long lsn) {
+        try {
+            Journal.moveAside(App.JOURNAL);
+            app.journal = Journal.open(App.JOURNAL, lsn, (op, in) -> {
+            });
+        } catch (IOException e) {
+            System.out.println("Error: No se pudo abrir un diario nuevo (" + e.getMessage()
+                    + "), los cambios solo se guardaran al salir.");
+        }
+    }
+
+    /**
+     * Busca la posicion de una cancion a la que se refiere el diario.
+     *
+     * @throws IOException Si la cancion no esta en el catalogo, por lo que el
+     *                     diario no corresponde al respaldo.
+     */
+    private int indexOfId(int id) throws IOException {
+        int index = songs.indexOfId(id);
+
+        if (index < 0) {
+            throw new IOException("El diario se refiere a una cancion que no existe: " + id);
+        }
+
+        return index;
+    }
+
+    private static void moveAside(Path path) {
+        try {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".corrupto"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Error: No se pudo apartar " + path.getFileName() + ".");
+        }
+    }
+
+    /**
+     * Aplica un cambio leido del diario sobre el catalogo en carga.
+     */
+    private void replay(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case Journal.ADD_SONG -> {
+                Song song = new Song();
+                song.read(in);
+                songs.add(song);
+            }
+
+            case Journal.ADD_SONGS -> {
+                int count = in.readInt();
+
+                for (int i = 0; i < count; i++) {
+                    Song song = new Song();
+                    song.read(in);
+                    songs.add(song);
+                }
+
+                records += count - 1;
+            }
+
+            case Journal.REMOVE_SONG -> Playlist.removeSongEverywhere(playlists,
+                    songs.remove(indexOfId(in.readInt())));
+
+            case Journal.UPDATE_SONG -> {
+                // Se reemplaza la cancion, sin modificar la construida, que las
+                // copias publicadas comparten.
+                int index = indexOfId(in.readInt());
+                Song song = new Song();
+                song.read(in);
+                Song previous = songs.set(index, song);
+                Playlist.resizeSongEverywhere(playlists, song.getId(), song.getSize() - previous.getSize());
+            }
+
+            case Journal.SAVE_PLAYLIST -> {
+                int position = in.readInt();
+                Playlist playlist = new Playlist("");
+                playlist.read(in);
+
+                if (position < playlists.size()) {
+                    playlists.set(position, playlist);
+                } else {
+                    playlists.add(playlist);
+                }
+            }
+
+            default -> throw new IOException("Operacion desconocida en el diario: " + op);
+        }
+
+        records++;
+        replayed++;
+
+        if (System.nanoTime() - lastPublish >= TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL)) {
+            publish();
+        }
+    }
+}
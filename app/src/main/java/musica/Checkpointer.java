@@ -0,0 +1,241 @@
+package musica;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Genera respaldos completos del catalogo en segundo plano, compactando el
+ * diario de cambios.
+ *
+ * Un respaldo se genera cuando el diario supera {@link #MAX_JOURNAL_SIZE}
+ * bytes, o cuando tiene cambios y han pasado {@link #MAX_INTERVAL}
+ * milisegundos desde el anterior. La unica pausa para el menu es la copia de
+ * las listas de canciones y playlists; la escritura del archivo se hace sin
+ * bloquear a la aplicacion.
+ *
+ * Cada respaldo se escribe en un archivo nuevo, {@code respaldo.<generacion>.arr},
+ * con un numero mayor que el del anterior, y al iniciar se abre el de mayor
+ * numero. Asi ningun respaldo se renombra sobre el archivo que el catalogo
+ * tiene mapeado en memoria, lo que en Windows no esta permitido. Los respaldos
+ * anteriores se borran en cuanto hay uno nuevo, salvo el que esta mapeado, que
+ * se borra al iniciar la siguiente vez. El respaldo de las versiones
+ * anteriores, {@code respaldo.arr}, cuenta como la generacion 0.
+ */
+public class Checkpointer implements Closeable {
+
+    public static final long MAX_JOURNAL_SIZE = 4 * 1024 * 1024;
+
+    public static final long MAX_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long CHECK_INTERVAL = 1000;
+
+    private static final String PREFIX = "respaldo.";
+
+    private static final String SUFFIX = ".arr";
+
+    private final App app;
+    private final ScheduledExecutorService executor;
+    private long lastCheckpoint;
+
+    public Checkpointer(App app) {
+        this.app = app;
+        this.lastCheckpoint = System.currentTimeMillis();
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Comienza a revisar periodicamente si es necesario generar un respaldo.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        if (app.journal == null) {
+            return;
+        }
+
+        try {
+            long size = app.journal.size();
+
+            if (size >= MAX_JOURNAL_SIZE
+                    || (size > 0 && System.currentTimeMillis() - lastCheckpoint >= MAX_INTERVAL)) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            System.out.println("Error: No se pudo generar el respaldo automatico.");
+            Console.flush();
+        }
+    }
+
+    /**
+     * Genera un respaldo completo. El diario se rota y las listas se copian en un
+     * mismo punto, sincronizado sobre la aplicacion; los cambios posteriores
+     * quedan en el nuevo archivo del diario.
+     *
+     * Las canciones ya construidas se copian por referencia, y las demas se
+     * copian directamente del archivo anterior, por lo que una modificacion hecha
+     * mientras se escribe el respaldo puede quedar incluida en el. Esto es
+     * correcto porque los registros de modificacion guardan la cancion completa
+     * y aplicarlos de nuevo produce el mismo resultado.
+     */
+    public synchronized void checkpoint() throws IOException {
+        long lsn;
+        SongTable songs;
+        ArrayList<Playlist> playlists;
+
+        synchronized (app) {
+            lsn = app.journal != null ? app.journal.rotate() : app.backupLsn;
+            songs = app.catalog.snapshot();
+            playlists = new ArrayList<>(app.playlists);
+        }
+
+        Path path = path(app.backup != null ? generation(app.backup) + 1 : 1);
+        write(path, lsn, songs, playlists);
+        app.backup = path;
+        app.backupLsn = lsn;
+        lastCheckpoint = System.currentTimeMillis();
+
+        if (app.journal != null) {
+            app.journal.discard(lsn);
+        }
+
+        CatalogFile mapped = songs.file();
+        discard(path, mapped != null ? mapped.path() : null);
+    }
+
+    /**
+     * Escribe un respaldo en un archivo temporal y, una vez en disco, le da su
+     * nombre definitivo. Si falla, el archivo temporal se borra.
+     */
+    static void write(Path path, long lsn, SongTable songs, ArrayList<Playlist> playlists) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            CatalogFile.write(temp, lsn, songs, playlists);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Obtiene la ruta del respaldo de una generacion.
+     */
+    static Path path(long generation) {
+        return generation == 0 ? App.BACKUP : App.BACKUP.resolveSibling(PREFIX + generation + SUFFIX);
+    }
+
+    /**
+     * Obtiene el numero de generacion de un respaldo.
+     *
+     * @return La generacion, 0 para {@code respaldo.arr}, o -1 si el nombre no es
+     *         el de un respaldo.
+     */
+    static long generation(Path path) {
+        String name = path.getFileName().toString();
+
+        if (name.equals(App.BACKUP.getFileName().toString())) {
+            return 0;
+        } else if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            long generation = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            return generation > 0 ? generation : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Busca el respaldo mas reciente.
+     *
+     * @return El respaldo de mayor generacion, o {@code null} si no hay ninguno.
+     */
+    static Path latest() throws IOException {
+        Path latest = null;
+
+        for (Path path : backups()) {
+            if (latest == null || generation(path) > generation(latest)) {
+                latest = path;
+            }
+        }
+
+        return latest;
+    }
+
+    /**
+     * Borra los respaldos anteriores a uno, y los temporales que haya dejado un
+     * respaldo interrumpido. Si un respaldo no se puede borrar, se intentara de
+     * nuevo con el siguiente.
+     *
+     * @param current Respaldo vigente.
+     * @param mapped  Respaldo que el catalogo tiene mapeado y que no se debe
+     *                borrar, o {@code null}.
+     */
+    static void discard(Path current, Path mapped) throws IOException {
+        for (Path path : backups()) {
+            if (generation(path) < generation(current) && !path.equals(mapped)) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        Path dir = App.BACKUP.toAbsolutePath().getParent();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX + ".tmp")) {
+            for (Path temp : stream) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Obtiene los respaldos del directorio actual, de cualquier generacion.
+     */
+    private static ArrayList<Path> backups() throws IOException {
+        Path dir = App.BACKUP.toAbsolutePath().getParent();
+        ArrayList<Path> found = new ArrayList<>();
+
+        // Incluye respaldo.arr, que no tiene numero de generacion.
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "respaldo*" + SUFFIX)) {
+            for (Path path : stream) {
+                if (generation(path) >= 0) {
+                    found.add(App.BACKUP.resolveSibling(path.getFileName()));
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Detiene las revisiones periodicas y espera a que termine el respaldo en
+     * curso, si lo hay.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package musica;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * Salida de la consola con buffer.
+ *
+ * {@link System#out} escribe y vacia su buffer en cada linea, por lo que un
+ * listado largo hace una llamada al sistema por cancion. {@link #install()} lo
+ * reemplaza por uno que solo escribe cuando se llena su buffer de
+ * {@link #BUFFER} bytes, o cuando se vacia: {@link InteractiveScanner} lo vacia
+ * antes de esperar cada respuesta, los hilos en segundo plano despues de sus
+ * mensajes, y la aplicacion al terminar.
+ */
+public final class Console {
+
+    /**
+     * Bytes que se acumulan antes de escribir en la consola.
+     */
+    public static final int BUFFER = 1 << 16;
+
+    private Console() {
+    }
+
+    /**
+     * Reemplaza {@link System#out} por una salida con buffer, que tambien se
+     * vacia si la aplicacion termina por un error.
+     */
+    public static void install() {
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER),
+                false, Charset.defaultCharset());
+        System.setOut(out);
+        Runtime.getRuntime().addShutdownHook(new Thread(out::flush));
+    }
+
+    /**
+     * Vacia el buffer de la consola.
+     */
+    public static void flush() {
+        System.out.flush();
+    }
+}
@@ -0,0 +1,184 @@
+package musica;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graba discos en archivos, uno por disco, en el directorio {@link #DIRECTORY}.
+ *
+ * Cada disco se escribe con {@link Playlist#print(Writer, SongTable)}
+ * directamente sobre un buffer del archivo, sin construir el texto completo
+ * en memoria. Los discos se graban en paralelo en un numero fijo de hilos; si
+ * la cola de espera se llena, el hilo que pide la grabacion la hace el mismo,
+ * de modo que grabar cientos de discos no acumula tareas sin limite.
+ *
+ * El nombre de cada archivo se obtiene del ID del disco con
+ * {@link #path(Playlist)}, de forma que dos IDs distintos nunca comparten
+ * archivo. En los sistemas de archivos que no distinguen mayusculas, dos IDs
+ * que solo difieren en ellas si coinciden; en una misma grabacion de varios
+ * discos, el segundo se rechaza en lugar de sobreescribir al primero.
+ */
+public class DiscBurner implements Closeable {
+
+    /**
+     * Directorio donde se guardan los discos grabados.
+     */
+    public static final Path DIRECTORY = Path.of("discos");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Resultado de grabar un disco.
+     */
+    public record Result(Playlist playlist, Path path, long bytes, long nanos) {
+
+        /**
+         * Describe la grabacion, con la velocidad de escritura.
+         */
+        @Override
+        public String toString() {
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+
+            return "Disco '%s' grabado en %s: %d bytes en %d ms (%d KB/s)."
+                    .formatted(playlist.getId(), path, bytes, millis, bytes * 1000 / 1024 / millis);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    public DiscBurner() {
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "disc-burner");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Graba varios discos en paralelo y espera a que terminen.
+     *
+     * @param playlists Discos a grabar.
+     * @param catalog   Canciones del catalogo; no debe modificarse mientras se
+     *                  graba, por lo que se recomienda una copia.
+     * @return El resultado de cada grabacion, en el mismo orden. Si un disco no
+     *         se pudo grabar, su resultado es {@code null}.
+     */
+    public List<Result> burn(List<Playlist> playlists, SongTable catalog) {
+        List<Future<Result>> pending = new ArrayList<>(playlists.size());
+        List<Result> results = new ArrayList<>(playlists.size());
+        HashMap<String, Playlist> files = new HashMap<>();
+
+        for (Playlist playlist : playlists) {
+            Playlist previous = files.putIfAbsent(path(playlist).toString().toLowerCase(Locale.ROOT), playlist);
+
+            if (previous != null) {
+                System.out.println("Error: El disco '" + playlist.getId() + "' se grabaria en el mismo archivo que '"
+                        + previous.getId() + "'.");
+                pending.add(null);
+            } else {
+                pending.add(executor.submit(() -> burn(playlist, catalog)));
+            }
+        }
+
+        for (int i = 0; i < pending.size(); i++) {
+            if (pending.get(i) == null) {
+                results.add(null);
+                continue;
+            }
+
+            try {
+                results.add(pending.get(i).get());
+            } catch (ExecutionException e) {
+                System.out.println("Error: No se pudo grabar el disco '" + playlists.get(i).getId() + "' ("
+                        + e.getCause() + ").");
+                results.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(null);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Graba un disco en el hilo actual.
+     *
+     * @param playlist Disco a grabar.
+     * @param catalog  Canciones del catalogo.
+     * @return El resultado de la grabacion.
+     */
+    public Result burn(Playlist playlist, SongTable catalog) throws IOException {
+        long start = System.nanoTime();
+        Path path = path(playlist);
+        Files.createDirectories(DIRECTORY);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            playlist.print(out, catalog);
+            out.flush();
+
+            return new Result(playlist, path, channel.size(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Obtiene la ruta del archivo de un disco, a partir de su ID. Las letras sin
+     * acento, los numeros, los espacios, los guiones, {@code _} y {@code #} se
+     * conservan; cualquier otro caracter se escribe como {@code %} y el valor
+     * hexadecimal de cada uno de sus bytes en UTF-8, como en las URL, por lo que
+     * dos IDs distintos dan nombres distintos.
+     */
+    public static Path path(Playlist playlist) {
+        StringBuilder name = new StringBuilder();
+
+        for (byte b : playlist.getId().getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == ' ' || c == '#'
+                    || c == '_' || c == '-') {
+                name.append(c);
+            } else {
+                name.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+
+        return DIRECTORY.resolve(name.append(".dic").toString());
+    }
+
+    /**
+     * Espera a que terminen las grabaciones en curso y detiene los hilos.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package musica;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Acomodo automatico de canciones en discos de capacidad fija, por su tamano
+ * en KB.
+ *
+ * Para llenar un solo disco, los conjuntos de hasta {@link #EXACT_LIMIT}
+ * canciones se resuelven con exactitud como una mochila: se recorren las sumas
+ * alcanzables en un mapa de bits de la capacidad, desplazandolo una vez por
+ * cancion, por lo que el costo es de {@code n * capacidad / 64} operaciones.
+ * Los conjuntos mas grandes se acomodan de la cancion mas grande a la mas
+ * pequena mientras quepan, lo que con muchas canciones deja un espacio libre
+ * menor a la mas pequena de las que faltan.
+ *
+ * Para repartir un conjunto en discos se usa "first fit decreasing": cada
+ * cancion, de mayor a menor, va al primer disco en el que cabe, que se busca en
+ * O(log n) con un arbol del espacio libre maximo de los discos. Usa a lo mas
+ * 11/9 del numero optimo de discos, mas uno. Para los conjuntos pequenos
+ * tambien se prueba llenar cada disco con la mochila exacta, y se conserva el
+ * reparto con menos discos.
+ */
+public final class DiscPacker {
+
+    /**
+     * Canciones hasta las cuales se llena un disco con la mochila exacta.
+     */
+    public static final int EXACT_LIMIT = 2048;
+
+    private DiscPacker() {
+    }
+
+    /**
+     * Elige las canciones que llenan un disco lo mas posible.
+     *
+     * @param sizes    Tamano de cada cancion, en KB.
+     * @param capacity Espacio libre del disco, en KB.
+     * @return Las posiciones en {@code sizes} de las canciones elegidas, en
+     *         orden creciente.
+     */
+    public static int[] fill(int[] sizes, int capacity) {
+        return sizes.length <= EXACT_LIMIT ? fillExact(sizes, capacity) : fillDecreasing(sizes, capacity);
+    }
+
+    /**
+     * Reparte las canciones en discos, buscando usar la menor cantidad. Las
+     * canciones que no caben ni en un disco vacio se omiten.
+     *
+     * @param sizes    Tamano de cada cancion, en KB.
+     * @param capacity Capacidad de cada disco, en KB.
+     * @return Las posiciones en {@code sizes} de las canciones de cada disco.
+     */
+    public static List<int[]> split(int[] sizes, int capacity) {
+        List<int[]> result = splitDecreasing(sizes, capacity);
+
+        if (sizes.length <= EXACT_LIMIT && result.size() > lowerBound(sizes, capacity)) {
+            List<int[]> exact = splitExact(sizes, capacity);
+
+            if (exact.size() < result.size()) {
+                result = exact;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Obtiene el minimo de discos que podria necesitar un reparto: el tamano
+     * total de las canciones que caben entre la capacidad, redondeado hacia
+     * arriba.
+     */
+    public static int lowerBound(int[] sizes, int capacity) {
+        long total = 0;
+
+        for (int size : sizes) {
+            if (size <= capacity) {
+                total += size;
+            }
+        }
+
+        return (int) ((total + capacity - 1) / capacity);
+    }
+
+    private static int[] fillExact(int[] sizes, int capacity) {
+        if (capacity <= 0) {
+            return new int[0];
+        }
+
+        // reachable: sumas que se pueden formar con las canciones revisadas.
+        // first[s]: la cancion con la que se alcanzo s por primera vez; la suma
+        // s - sizes[first[s]] ya se alcanzaba sin ella.
+        long[] reachable = new long[(capacity >>> 6) + 1];
+        int[] first = new int[capacity + 1];
+        int best = 0;
+        reachable[0] = 1;
+
+        for (int i = 0; i < sizes.length && best < capacity; i++) {
+            int size = sizes[i];
+
+            if (size <= 0 || size > capacity) {
+                continue;
+            }
+
+            int words = size >>> 6;
+            int bits = size & 63;
+
+            for (int w = reachable.length - 1; w >= words; w--) {
+                long shifted = reachable[w - words] << bits;
+
+                if (bits != 0 && w - words > 0) {
+                    shifted |= reachable[w - words - 1] >>> (64 - bits);
+                }
+
+                long added = shifted & ~reachable[w];
+
+                while (added != 0) {
+                    int sum = w << 6 | Long.numberOfTrailingZeros(added);
+                    added &= added - 1;
+
+                    if (sum <= capacity) {
+                        first[sum] = i;
+                        reachable[w] |= 1L << sum;
+                        best = Math.max(best, sum);
+                    }
+                }
+            }
+        }
+
+        int count = 0;
+        int[] chosen = new int[sizes.length];
+
+        for (int sum = best; sum > 0; sum -= sizes[chosen[count - 1]]) {
+            chosen[count++] = first[sum];
+        }
+
+        int[] result = Arrays.copyOf(chosen, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int[] fillDecreasing(int[] sizes, int capacity) {
+        int[] order = decreasing(sizes);
+        int[] chosen = new int[sizes.length];
+        int count = 0;
+        int free = capacity;
+
+        for (int i : order) {
+            if (sizes[i] > 0 && sizes[i] <= free) {
+                chosen[count++] = i;
+                free -= sizes[i];
+            }
+        }
+
+        int[] result = Arrays.copyOf(chosen, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static List<int[]> splitDecreasing(int[] sizes, int capacity) {
+        int[] order = decreasing(sizes);
+
+        // Arbol binario completo sobre los discos: cada nodo guarda el mayor
+        // espacio libre de los discos debajo de el. Al inicio hay tantos discos
+        // vacios como canciones, y se usan de izquierda a derecha.
+        int leaves = Integer.highestOneBit(Math.max(1, sizes.length - 1)) << 1;
+        int[] free = new int[2 * leaves];
+        Arrays.fill(free, capacity);
+
+        int[] disc = new int[sizes.length];
+        int[] counts = new int[leaves];
+        int discs = 0;
+
+        for (int i : order) {
+            if (sizes[i] > capacity) {
+                disc[i] = -1;
+                continue;
+            }
+
+            int node = 1;
+
+            while (node < leaves) {
+                node = free[2 * node] >= sizes[i] ? 2 * node : 2 * node + 1;
+            }
+
+            int leaf = node - leaves;
+            disc[i] = leaf;
+            counts[leaf]++;
+            discs = Math.max(discs, leaf + 1);
+            free[node] -= sizes[i];
+
+            for (node >>>= 1; node > 0; node >>>= 1) {
+                free[node] = Math.max(free[2 * node], free[2 * node + 1]);
+            }
+        }
+
+        List<int[]> result = new ArrayList<>(discs);
+
+        for (int d = 0; d < discs; d++) {
+            result.add(new int[counts[d]]);
+        }
+
+        int[] filled = new int[discs];
+
+        for (int i = 0; i < sizes.length; i++) {
+            if (disc[i] >= 0) {
+                result.get(disc[i])[filled[disc[i]]++] = i;
+            }
+        }
+
+        return result;
+    }
+
+    private static List<int[]> splitExact(int[] sizes, int capacity) {
+        List<int[]> result = new ArrayList<>();
+        int[] remaining = new int[sizes.length];
+        int count = 0;
+
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] <= capacity) {
+                remaining[count++] = i;
+            }
+        }
+
+        while (count > 0) {
+            int[] subset = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                subset[i] = sizes[remaining[i]];
+            }
+
+            int[] chosen = fillExact(subset, capacity);
+
+            if (chosen.length == 0) {
+                // Solo quedan canciones vacias, que caben en cualquier disco.
+                chosen = new int[count];
+                Arrays.setAll(chosen, i -> i);
+            }
+
+            int[] disc = new int[chosen.length];
+            int kept = 0;
+
+            for (int i = 0, c = 0; i < count; i++) {
+                if (c < chosen.length && chosen[c] == i) {
+                    disc[c++] = remaining[i];
+                } else {
+                    remaining[kept++] = remaining[i];
+                }
+            }
+
+            result.add(disc);
+            count = kept;
+        }
+
+        return result;
+    }
+
+    /**
+     * Obtiene las posiciones de las canciones de la mas grande a la mas
+     * pequena.
+     */
+    private static int[] decreasing(int[] sizes) {
+        // Cada tamano y su posicion se ordenan juntos en un long, sin crear un
+        // objeto por cancion.
+        long[] keys = new long[sizes.length];
+
+        for (int i = 0; i < sizes.length; i++) {
+            keys[i] = (long) -sizes[i] << 32 | i;
+        }
+
+        Arrays.sort(keys);
+        int[] result = new int[sizes.length];
+
+        for (int i = 0; i < sizes.length; i++) {
+            result[i] = (int) keys[i];
+        }
+
+        return result;
+    }
+}
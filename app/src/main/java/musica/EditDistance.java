@@ -0,0 +1,78 @@
+package musica;
+
+/**
+ * Distancia de edicion (Levenshtein) acotada, para las busquedas aproximadas.
+ */
+public final class EditDistance {
+
+    private EditDistance() {
+    }
+
+    /**
+     * Obtiene el minimo de inserciones, borrados y sustituciones para que un
+     * patron aparezca en cualquier parte de un texto, es decir, la distancia
+     * del patron al fragmento del texto que mas se le parece.
+     *
+     * Las distancias mayores a {@code max} no se calculan con exactitud: en cada
+     * posicion del texto solo se calculan las filas que aun pueden quedar dentro
+     * del limite (corte de Ukkonen), por lo que el costo es cercano a
+     * {@code max} por caracter del texto en lugar del largo del patron.
+     *
+     * @param pattern Patron normalizado.
+     * @param text    Texto normalizado.
+     * @param max     Distancia maxima de interes.
+     * @return La distancia, o {@code max + 1} si es mayor a {@code max}.
+     */
+    public static int within(String pattern, String text, int max) {
+        int m = pattern.length();
+
+        if (m == 0) {
+            return 0;
+        }
+
+        // column[i]: distancia del prefijo de i caracteres del patron al mejor
+        // fragmento que termina en la posicion actual del texto, o max + 1 si
+        // es mayor. Las filas despues de last ya son mayores a max.
+        int[] column = new int[m + 1];
+
+        for (int i = 0; i <= m; i++) {
+            column[i] = Math.min(i, max + 1);
+        }
+
+        int last = Math.min(max, m);
+        int best = column[m];
+
+        for (int j = 0; j < text.length() && best > 0; j++) {
+            char c = text.charAt(j);
+            int diagonal = 0;
+            int limit = Math.min(last + 1, m);
+
+            for (int i = 1; i <= limit; i++) {
+                int above = column[i];
+                int cost = pattern.charAt(i - 1) == c ? 0 : 1;
+                column[i] = Math.min(Math.min(Math.min(column[i - 1] + 1, above + 1), diagonal + cost), max + 1);
+                diagonal = above;
+            }
+
+            last = limit;
+
+            while (last > 0 && column[last] > max) {
+                last--;
+            }
+
+            if (last == m) {
+                best = Math.min(best, column[m]);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Obtiene la distancia maxima que se tolera para una consulta: una edicion
+     * hasta 4 caracteres, dos hasta 8 y tres para consultas mas largas.
+     */
+    public static int tolerance(int length) {
+        return length <= 4 ? 1 : length <= 8 ? 2 : 3;
+    }
+}
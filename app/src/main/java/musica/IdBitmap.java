@@ -0,0 +1,421 @@
+package musica;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto comprimido de IDs de canciones, con la estructura de un bitmap
+ * "roaring": los IDs se agrupan por sus 16 bits altos, y cada grupo guarda sus
+ * 16 bits bajos en un arreglo ordenado si tiene pocos elementos, o en un mapa
+ * de 65536 bits si tiene muchos.
+ *
+ * Como los IDs se asignan en orden creciente, los de un catalogo quedan en
+ * pocos grupos densos, y las intersecciones y uniones se hacen palabra por
+ * palabra. Es el resultado de cada criterio de un {@link SongQuery}.
+ */
+public class IdBitmap {
+
+    /**
+     * Elementos a partir de los cuales un grupo se guarda como mapa de bits.
+     */
+    private static final int ARRAY_LIMIT = 4096;
+
+    private static final int WORDS = 1 << 16 >>> 6;
+
+    private char[] keys = new char[4];
+    private Object[] containers = new Object[4];
+    private int[] cardinalities = new int[4];
+    private int size;
+
+    /**
+     * Crea un conjunto con los IDs de una lista.
+     */
+    public static IdBitmap of(IdList ids) {
+        IdBitmap result = new IdBitmap();
+        result.addAll(ids);
+        return result;
+    }
+
+    /**
+     * Agrega un ID.
+     */
+    public void add(int id) {
+        int i = containerFor(id >>> 16);
+        char low = (char) id;
+
+        if (containers[i] instanceof long[] words) {
+            if ((words[low >>> 6] & 1L << low) == 0) {
+                words[low >>> 6] |= 1L << low;
+                cardinalities[i]++;
+            }
+
+            return;
+        }
+
+        char[] values = (char[]) containers[i];
+        int count = cardinalities[i];
+        int position = count == 0 || values[count - 1] < low ? -count - 1 : Arrays.binarySearch(values, 0, count, low);
+
+        if (position >= 0) {
+            return;
+        }
+
+        if (count == ARRAY_LIMIT) {
+            containers[i] = toWords(values, count);
+            cardinalities[i] = count;
+            add(id);
+            return;
+        }
+
+        position = -position - 1;
+
+        if (count == values.length) {
+            values = Arrays.copyOf(values, Math.min(count * 2, ARRAY_LIMIT));
+            containers[i] = values;
+        }
+
+        System.arraycopy(values, position, values, position + 1, count - position);
+        values[position] = low;
+        cardinalities[i]++;
+    }
+
+    /**
+     * Agrega todos los IDs de una lista.
+     */
+    public void addAll(IdList ids) {
+        for (int i = 0; i < ids.size(); i++) {
+            add(ids.get(i));
+        }
+    }
+
+    public boolean contains(int id) {
+        int i = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+
+        if (i < 0) {
+            return false;
+        }
+
+        char low = (char) id;
+        return containers[i] instanceof long[] words
+                ? (words[low >>> 6] & 1L << low) != 0
+                : Arrays.binarySearch((char[]) containers[i], 0, cardinalities[i], low) >= 0;
+    }
+
+    /**
+     * Obtiene el numero de IDs.
+     */
+    public int cardinality() {
+        int result = 0;
+
+        for (int i = 0; i < size; i++) {
+            result += cardinalities[i];
+        }
+
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Obtiene el ID en una posicion del orden creciente, saltando los grupos
+     * completos que estan antes de ella.
+     *
+     * @param rank Posicion, desde 0.
+     */
+    public int select(int rank) {
+        if (rank < 0) {
+            throw new IndexOutOfBoundsException(rank);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (rank < cardinalities[i]) {
+                int high = keys[i] << 16;
+
+                if (!(containers[i] instanceof long[] words)) {
+                    return high | ((char[]) containers[i])[rank];
+                }
+
+                for (int w = 0;; w++) {
+                    int count = Long.bitCount(words[w]);
+
+                    if (rank < count) {
+                        long word = words[w];
+
+                        for (; rank > 0; rank--) {
+                            word &= word - 1;
+                        }
+
+                        return high | w << 6 | Long.numberOfTrailingZeros(word);
+                    }
+
+                    rank -= count;
+                }
+            }
+
+            rank -= cardinalities[i];
+        }
+
+        throw new IndexOutOfBoundsException(rank);
+    }
+
+    /**
+     * Obtiene los IDs que estan en ambos conjuntos.
+     */
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.and(keys[i], containers[i], cardinalities[i], other.containers[j], other.cardinalities[j]);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Obtiene los IDs que estan en alguno de los conjuntos.
+     */
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], copy(containers[i]), cardinalities[i]);
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], copy(other.containers[j]), other.cardinalities[j]);
+                j++;
+            } else {
+                result.or(keys[i], containers[i], cardinalities[i], other.containers[j], other.cardinalities[j]);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Obtiene los IDs en un arreglo, en orden creciente.
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int[] count = new int[1];
+        forEach(id -> result[count[0]++] = id);
+        return result;
+    }
+
+    /**
+     * Recorre los IDs en orden creciente.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+
+            if (containers[i] instanceof long[] words) {
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+
+                    while (word != 0) {
+                        action.accept(high | w << 6 | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) containers[i];
+
+                for (int v = 0; v < cardinalities[i]; v++) {
+                    action.accept(high | values[v]);
+                }
+            }
+        }
+    }
+
+    private int containerFor(int key) {
+        int i = size > 0 && keys[size - 1] == key ? size - 1 : Arrays.binarySearch(keys, 0, size, (char) key);
+
+        if (i >= 0) {
+            return i;
+        }
+
+        i = -i - 1;
+        ensureCapacity();
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        System.arraycopy(cardinalities, i, cardinalities, i + 1, size - i);
+        keys[i] = (char) key;
+        containers[i] = new char[4];
+        cardinalities[i] = 0;
+        size++;
+
+        return i;
+    }
+
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+            cardinalities = Arrays.copyOf(cardinalities, size * 2);
+        }
+    }
+
+    /**
+     * Agrega un grupo al final, si no esta vacio.
+     */
+    private void append(char key, Object container, int cardinality) {
+        if (cardinality == 0) {
+            return;
+        }
+
+        ensureCapacity();
+        keys[size] = key;
+        containers[size] = container;
+        cardinalities[size] = cardinality;
+        size++;
+    }
+
+    private void and(char key, Object a, int countA, Object b, int countB) {
+        if (a instanceof long[] wordsA && b instanceof long[] wordsB) {
+            long[] words = new long[WORDS];
+            int count = 0;
+
+            for (int w = 0; w < WORDS; w++) {
+                words[w] = wordsA[w] & wordsB[w];
+                count += Long.bitCount(words[w]);
+            }
+
+            append(key, count > ARRAY_LIMIT ? words : toValues(words, count), count);
+        } else if (a instanceof long[] words) {
+            filter(key, (char[]) b, countB, words);
+        } else if (b instanceof long[] words) {
+            filter(key, (char[]) a, countA, words);
+        } else {
+            char[] valuesA = (char[]) a;
+            char[] valuesB = (char[]) b;
+            char[] values = new char[Math.min(countA, countB)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+
+            while (i < countA && j < countB) {
+                if (valuesA[i] < valuesB[j]) {
+                    i++;
+                } else if (valuesA[i] > valuesB[j]) {
+                    j++;
+                } else {
+                    values[count++] = valuesA[i];
+                    i++;
+                    j++;
+                }
+            }
+
+            append(key, values, count);
+        }
+    }
+
+    /**
+     * Agrega un grupo con los valores de un arreglo que estan en un mapa de
+     * bits.
+     */
+    private void filter(char key, char[] values, int count, long[] words) {
+        char[] result = new char[count];
+        int found = 0;
+
+        for (int v = 0; v < count; v++) {
+            if ((words[values[v] >>> 6] & 1L << values[v]) != 0) {
+                result[found++] = values[v];
+            }
+        }
+
+        append(key, result, found);
+    }
+
+    private void or(char key, Object a, int countA, Object b, int countB) {
+        if (a instanceof long[] || b instanceof long[]) {
+            long[] words = a instanceof long[] wordsA ? wordsA.clone() : toWords((char[]) a, countA);
+            int count = 0;
+
+            if (b instanceof long[] wordsB) {
+                for (int w = 0; w < WORDS; w++) {
+                    words[w] |= wordsB[w];
+                }
+            } else {
+                char[] valuesB = (char[]) b;
+
+                for (int v = 0; v < countB; v++) {
+                    words[valuesB[v] >>> 6] |= 1L << valuesB[v];
+                }
+            }
+
+            for (int w = 0; w < WORDS; w++) {
+                count += Long.bitCount(words[w]);
+            }
+
+            append(key, words, count);
+            return;
+        }
+
+        char[] valuesA = (char[]) a;
+        char[] valuesB = (char[]) b;
+        char[] values = new char[countA + countB];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < countA || j < countB) {
+            if (j == countB || (i < countA && valuesA[i] < valuesB[j])) {
+                values[count++] = valuesA[i++];
+            } else if (i == countA || valuesA[i] > valuesB[j]) {
+                values[count++] = valuesB[j++];
+            } else {
+                values[count++] = valuesA[i++];
+                j++;
+            }
+        }
+
+        append(key, count > ARRAY_LIMIT ? toWords(values, count) : values, count);
+    }
+
+    private static Object copy(Object container) {
+        return container instanceof long[] words ? words.clone() : ((char[]) container).clone();
+    }
+
+    private static long[] toWords(char[] values, int count) {
+        long[] words = new long[WORDS];
+
+        for (int v = 0; v < count; v++) {
+            words[values[v] >>> 6] |= 1L << values[v];
+        }
+
+        return words;
+    }
+
+    private static char[] toValues(long[] words, int count) {
+        char[] values = new char[count];
+        int found = 0;
+
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+
+            while (word != 0) {
+                values[found++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+
+        return values;
+    }
+}
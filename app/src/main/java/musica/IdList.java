@@ -0,0 +1,97 @@
+package musica;
+
+import java.util.Arrays;
+
+/**
+ * Lista ordenada y sin repetidos de IDs de canciones, usada por los indices.
+ *
+ * Como los IDs se asignan en orden creciente, agregar una cancion nueva casi
+ * siempre agrega su ID al final de la lista.
+ */
+public class IdList {
+
+    private int[] ids;
+    private int size;
+
+    public IdList() {
+        ids = new int[4];
+    }
+
+    private IdList(int[] ids, int size) {
+        this.ids = ids;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        return ids[index];
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * Agrega un ID, si no estaba.
+     */
+    public void add(int id) {
+        int position = size == 0 || ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+
+        if (position >= 0) {
+            return;
+        }
+
+        position = -position - 1;
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        size++;
+    }
+
+    /**
+     * Quita un ID, si estaba.
+     */
+    public void remove(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+
+        if (position >= 0) {
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Obtiene los IDs que estan en ambas listas.
+     */
+    public IdList intersect(IdList other) {
+        int[] result = new int[Math.max(Math.min(size, other.size), 4)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (ids[i] < other.ids[j]) {
+                i++;
+            } else if (ids[i] > other.ids[j]) {
+                j++;
+            } else {
+                result[count++] = ids[i];
+                i++;
+                j++;
+            }
+        }
+
+        return new IdList(result, count);
+    }
+}
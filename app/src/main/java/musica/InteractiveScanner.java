@@ -2,19 +2,38 @@ package musica;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Scanner;
+import java.util.regex.Pattern;
 
 /**
  * Una version de {@code Scanner} que solicita datos interactivamente, con
  * alertas y mensajes de error, y espera hasta que la informacion sea valida.
+ *
+ * Las reglas de validacion estan tambien disponibles como metodos estaticos
+ * ({@link #parseLine(String, int)}, {@link #parseDate(String)}, etc.), para
+ * validar datos que no vienen del usuario con las mismas reglas.
  */
 public class InteractiveScanner {
+    private static final Pattern ALPHABETIC = Pattern.compile("[\\p{L}\\p{M} ]+");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
     private final Scanner scanner;
 
     public InteractiveScanner() {
         scanner = new Scanner(System.in);
     }
 
+    /**
+     * Muestra un mensaje y lee la respuesta. Antes de esperarla se vacia el
+     * buffer de la consola, para que se vea todo lo escrito hasta el momento.
+     */
+    private String prompt(String message) {
+        System.out.print(message + "> ");
+        Console.flush();
+        return scanner.nextLine();
+    }
+
     /**
      * Solicita una linea de texto al usuario. No puede estar vacia.
      * 
@@ -23,18 +42,30 @@ public class InteractiveScanner {
      * @return La linea ingresada por el usuario.
      */
     public String nextLine(String message, int maxCharacters) {
-        String value = "";
-
-        do {
-            System.out.print(message + "> ");
-            value = scanner.nextLine();
+        while (true) {
 
-            if (value.isBlank()) {
-                System.out.println("Error: El valor no puede estar vacio.");
-            } else if (value.length() > maxCharacters) {
-                System.out.println("Error: El valor no puede ser mayor a " + maxCharacters + " caracteres.");
+            try {
+                return parseLine(prompt(message), maxCharacters);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
             }
-        } while (value.isBlank() || value.length() > maxCharacters);
+        }
+    }
+
+    /**
+     * Valida una linea de texto. No puede estar vacia.
+     * 
+     * @param value         Texto a validar.
+     * @param maxCharacters Numero maximo de caracteres que puede tener la linea.
+     * @return La linea sin espacios al inicio y al final.
+     * @throws IllegalArgumentException Si no es valida, con el motivo.
+     */
+    public static String parseLine(String value, int maxCharacters) {
+        if (value.isBlank()) {
+            throw new IllegalArgumentException("El valor no puede estar vacio.");
+        } else if (value.length() > maxCharacters) {
+            throw new IllegalArgumentException("El valor no puede ser mayor a " + maxCharacters + " caracteres.");
+        }
 
         return value.trim();
     }
@@ -48,23 +79,31 @@ public class InteractiveScanner {
      * @return
      */
     public String nextLineAlphabetic(String message, int maxCharacters) {
-        String value = "";
-        boolean valid = false;
-
-        do {
-            System.out.print(message + "> ");
-            value = scanner.nextLine();
+        while (true) {
 
-            if (value.isBlank()) {
-                System.out.println("Error: El valor no puede estar vacio.");
-            } else if (value.length() > maxCharacters) {
-                System.out.println("Error: El valor no puede ser mayor a " + maxCharacters + " caracteres.");
-            } else if (!value.matches("[a-zA-Z ]+")) {
-                System.out.println("Error: El valor solo puede contener letras y espacios.");
-            } else {
-                valid = true;
+            try {
+                return parseLineAlphabetic(prompt(message), maxCharacters);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
             }
-        } while (!valid);
+        }
+    }
+
+    /**
+     * Valida una linea de texto con unicamente caracteres alfabeticos y
+     * espacios. No puede estar vacia.
+     * 
+     * @param value         Texto a validar.
+     * @param maxCharacters Numero maximo de caracteres que puede tener la linea.
+     * @return La linea sin espacios al inicio y al final.
+     * @throws IllegalArgumentException Si no es valida, con el motivo.
+     */
+    public static String parseLineAlphabetic(String value, int maxCharacters) {
+        parseLine(value, maxCharacters);
+
+        if (!ALPHABETIC.matcher(value).matches()) {
+            throw new IllegalArgumentException("El valor solo puede contener letras y espacios.");
+        }
 
         return value.trim();
     }
@@ -80,10 +119,9 @@ public class InteractiveScanner {
         boolean isNumber = false;
 
         do {
-            System.out.print(message + "> ");
             try {
 
-                num = Integer.parseInt(scanner.nextLine());
+                num = Integer.parseInt(prompt(message));
 
                 if (num >= 0) {
                     isNumber = true;
@@ -100,91 +138,115 @@ public class InteractiveScanner {
     }
 
     public LocalDate nextDate(String message) {
-        LocalDate value = null;
-        boolean valid = false;
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        while (true) {
 
-        do {
-            System.out.print(message + "> ");
             try {
-                value = LocalDate.parse(scanner.nextLine(), formatter);
-
-                if (value.equals(LocalDate.now()) || value.isBefore(LocalDate.now())) {
-                    // Validar si es año bisiesto
-                    if (value.getMonthValue() == 2 && value.getDayOfMonth() == 29) {
-                        if (value.getYear() % 4 != 0) {
-                            System.out.println("Error: El valor no es valido.");
-                        } else {
-                            valid = true;
-                        }
-                    } else {
-                        valid = true;
-                    }
-                } else {
-                    System.out.println("Error: El valor no debe ser una fecha futura.");
-                }
-            } catch (Exception e) {
-                System.out.println("Error: El valor no es valido.");
+                return parseDate(prompt(message));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
             }
-        } while (!valid);
+        }
+    }
+
+    /**
+     * Valida una fecha con formato dd/mm/aaaa. No puede ser una fecha futura.
+     * 
+     * @param value Texto a validar.
+     * @return La fecha.
+     * @throws IllegalArgumentException Si no es valida, con el motivo.
+     */
+    public static LocalDate parseDate(String value) {
+        LocalDate date;
+
+        try {
+            date = LocalDate.parse(value, DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("El valor no es valido.");
+        }
 
-        return value;
+        if (date.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("El valor no debe ser una fecha futura.");
+        }
+
+        // Validar si es año bisiesto
+        if (date.getMonthValue() == 2 && date.getDayOfMonth() == 29 && date.getYear() % 4 != 0) {
+            throw new IllegalArgumentException("El valor no es valido.");
+        }
+
+        return date;
     }
 
-    public int[] nextSongLength(String message) {
-        int[] value = new int[2];
-        boolean valid = false;
+    public int nextSongLength(String message) {
+        while (true) {
 
-        do {
-            System.out.print(message + "> ");
             try {
-                String[] parts = scanner.nextLine().split(":");
-
-                if (parts.length == 2) {
-                    value[0] = Integer.parseInt(parts[0]);
-                    value[1] = Integer.parseInt(parts[1]);
-
-                    // nota: tampoco puede ser 0:00 (ser una cancion vacia)
-                    if (value[0] >= 0 && value[1] >= 0 && value[1] < 60 && (value[0] > 0 || value[1] > 0)) {
-                        valid = true;
-                    } else {
-                        System.out.println("Error: El valor no es valido.");
-                    }
-                } else {
-                    System.out.println("Error: El valor no es valido.");
-                }
-            } catch (Exception e) {
-                System.out.println("Error: El valor no es valido.");
+                return parseSongLength(prompt(message));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
             }
-        } while (!valid);
+        }
+    }
 
-        return value;
+    /**
+     * Valida una duracion con formato minutos:segundos.
+     * 
+     * @param value Texto a validar.
+     * @return La duracion en segundos.
+     * @throws IllegalArgumentException Si no es valida, con el motivo.
+     */
+    public static int parseSongLength(String value) {
+        String[] parts = value.split(":");
+        int minutes;
+        int seconds;
+
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("El valor no es valido.");
+        }
+
+        try {
+            minutes = Integer.parseInt(parts[0]);
+            seconds = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El valor no es valido.");
+        }
+
+        // nota: tampoco puede ser 0:00 (ser una cancion vacia)
+        if (minutes < 0 || seconds < 0 || seconds >= 60 || (minutes == 0 && seconds == 0)
+                || minutes > (Integer.MAX_VALUE - 59) / 60) {
+            throw new IllegalArgumentException("El valor no es valido.");
+        }
+
+        return minutes * 60 + seconds;
     }
 
-    public String nextMb(String message) {
+    /**
+     * Solicita un tamano en MB al usuario, con hasta tres decimales.
+     * 
+     * @param message Mensaje a desplegar al usuario.
+     * @return El tamano en KB.
+     */
+    public int nextMb(String message) {
         String value = "";
         boolean valid = false;
 
         do {
-            System.out.print(message + "> ");
-            value = scanner.nextLine();
+            value = prompt(message).trim();
 
             if (value.isBlank()) {
                 System.out.println("Error: Ingrese un valor valido");
-            } else if (value.length() > 4) {
-                System.out.println("Error: El valor excede la capacidad maxima");
-
-            } else if (!value.matches("[0-9]+")) {
+            } else if (!value.matches("[0-9]*(\\.[0-9]*)?") || value.equals(".")) {
                 System.out.println("Error: Solo se aceptan caracteres numericos");
-
+            } else if (value.indexOf('.') > 4 || (value.indexOf('.') < 0 && value.length() > 4)) {
+                System.out.println("Error: El valor excede la capacidad maxima");
+            } else if (value.length() - value.indexOf('.') > 4 && value.indexOf('.') >= 0) {
+                System.out.println("Error: Solo se aceptan hasta tres decimales");
             } else {
                 valid = true;
             }
 
         } while (!valid);
 
-        return value.trim();
+        return Song.parseSize(value);
     }
 
     public String nextYesNo(String message) {
@@ -192,8 +254,7 @@ public class InteractiveScanner {
         boolean valid = false;
 
         do {
-            System.out.print(message + "> ");
-            value = scanner.nextLine();
+            value = prompt(message);
 
             if (value.isBlank()) {
                 System.out.println("Error: Ingrese un valor valido");
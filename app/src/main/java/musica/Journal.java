@@ -0,0 +1,400 @@
+package musica;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de cambios (write-ahead log) del catalogo.
+ *
+ * Cada modificacion al catalogo se agrega al final del archivo como un
+ * registro compacto, en lugar de reescribir el respaldo completo. Al iniciar,
+ * los registros se vuelven a aplicar sobre el ultimo respaldo, de modo que el
+ * costo de guardar depende del numero de cambios y no del tamano del catalogo.
+ *
+ * Formato de cada registro:
+ *
+ * <pre>
+ * [int longitud][long lsn][byte operacion][datos...][int crc32]
+ * </pre>
+ *
+ * El {@code lsn} es un numero de secuencia creciente; el respaldo guarda el
+ * ultimo {@code lsn} que contiene, para no aplicar dos veces un mismo cambio.
+ * Un registro incompleto o con crc invalido marca el final del diario (una
+ * escritura interrumpida por una falla) y se descarta.
+ *
+ * Al generar un respaldo, el archivo activo se cierra y se renombra como un
+ * segmento {@code respaldo.log.<lsn>}, con el ultimo {@code lsn} que contiene.
+ * Los segmentos se eliminan una vez que un respaldo los incluye.
+ */
+public class Journal implements Closeable {
+
+    public static final byte ADD_SONG = 1;
+
+    /**
+     * Varias canciones agregadas a la vez, como en una importacion.
+     */
+    public static final byte ADD_SONGS = 2;
+
+    /**
+     * Cancion borrada, por su ID.
+     */
+    public static final byte REMOVE_SONG = 3;
+
+    /**
+     * Cancion modificada, por su ID, con todos sus datos.
+     */
+    public static final byte UPDATE_SONG = 4;
+
+    /**
+     * Playlist guardada con los IDs de sus canciones.
+     */
+    public static final byte SAVE_PLAYLIST = 5;
+
+    /**
+     * Registros escritos sin sincronizar antes de forzar un {@code fsync}.
+     */
+    private static final int SYNC_BATCH = 64;
+
+    /**
+     * Intervalo maximo, en milisegundos, que un registro puede esperar su
+     * {@code fsync}.
+     */
+    private static final long SYNC_INTERVAL = 200;
+
+    /**
+     * Escribe los datos de un registro.
+     */
+    public interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Aplica un registro leido del diario.
+     */
+    public interface Handler {
+        void apply(byte op, DataInputStream in) throws IOException;
+    }
+
+    private final Path path;
+    private final ScheduledExecutorService syncer;
+    private final ByteArrayOutputStream buffer;
+    private FileChannel channel;
+    private long nextLsn;
+    private int unsynced;
+
+    private Journal(Path path, FileChannel channel, long nextLsn) {
+        this.path = path;
+        this.channel = channel;
+        this.nextLsn = nextLsn;
+        this.buffer = new ByteArrayOutputStream(256);
+
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre el diario para agregar registros, aplicando antes todos los registros
+     * posteriores a {@code afterLsn}, primero los de los segmentos cerrados y
+     * luego los del archivo activo. Si el diario termina en un registro
+     * incompleto, este se trunca.
+     *
+     * @param path     Ruta del diario.
+     * @param afterLsn Ultimo numero de secuencia contenido en el respaldo.
+     * @param handler  Recibe cada registro pendiente de aplicar.
+     * @return El diario listo para agregar registros.
+     */
+    public static Journal open(Path path, long afterLsn, Handler handler) throws IOException {
+        long lastLsn = afterLsn;
+
+        for (Path segment : segments(path, Long.MAX_VALUE)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                lastLsn = Math.max(lastLsn, replay(channel, afterLsn, handler)[1]);
+            }
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            long[] state = replay(channel, afterLsn, handler);
+
+            if (state[0] < channel.size()) {
+                channel.truncate(state[0]);
+            }
+            channel.position(state[0]);
+
+            Journal journal = new Journal(path, channel, Math.max(lastLsn, state[1]) + 1);
+            journal.discard(afterLsn);
+
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Aparta el diario y sus segmentos cerrados, agregando {@code .corrupto} a
+     * sus nombres, para que no se vuelvan a aplicar al iniciar.
+     *
+     * @param path Ruta del diario.
+     */
+    public static void moveAside(Path path) throws IOException {
+        for (Path segment : segments(path, Long.MAX_VALUE)) {
+            Files.move(segment, segment.resolveSibling(segment.getFileName() + ".corrupto"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (Files.exists(path)) {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".corrupto"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Obtiene los segmentos cerrados del diario cuyo ultimo numero de secuencia
+     * no supera {@code maxLsn}, en orden.
+     */
+    private static List<Path> segments(Path path, long maxLsn) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        TreeMap<Long, Path> found = new TreeMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path file : stream) {
+                try {
+                    long lsn = Long.parseLong(file.getFileName().toString().substring(prefix.length()));
+
+                    if (lsn <= maxLsn) {
+                        found.put(lsn, file);
+                    }
+                } catch (NumberFormatException e) {
+                    // No es un segmento (por ejemplo, un diario corrupto apartado).
+                }
+            }
+        }
+
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * Lee los registros validos del canal y aplica los posteriores a
+     * {@code afterLsn}.
+     *
+     * @return La posicion final del ultimo registro valido y el mayor numero de
+     *         secuencia leido.
+     */
+    private static long[] replay(FileChannel channel, long afterLsn, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        CRC32 crc = new CRC32();
+        long position = 0;
+        long lastLsn = afterLsn;
+        long size = channel.size();
+
+        while (size - position >= 4) {
+            int length = in.readInt();
+
+            if (length < 9 || length > size - position - 8) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            in.readFully(record);
+            int checksum = in.readInt();
+
+            crc.reset();
+            crc.update(record);
+
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+            long lsn = data.readLong();
+            byte op = data.readByte();
+
+            if (lsn > afterLsn) {
+                handler.apply(op, data);
+            }
+
+            lastLsn = Math.max(lastLsn, lsn);
+            position += 8 + length;
+        }
+
+        return new long[] { position, lastLsn };
+    }
+
+    /**
+     * Agrega un registro al final del diario. La escritura llega al sistema
+     * operativo de inmediato, pero el {@code fsync} se agrupa con los registros
+     * cercanos.
+     *
+     * @param op      Tipo de operacion.
+     * @param payload Datos del registro.
+     * @return El numero de secuencia asignado al registro.
+     */
+    public synchronized long append(byte op, Payload payload) throws IOException {
+        long lsn = nextLsn;
+
+        if (!channel.isOpen()) {
+            openActive();
+        }
+
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        out.writeLong(lsn);
+        out.writeByte(op);
+        payload.write(out);
+        out.writeInt(0);
+
+        ByteBuffer record = ByteBuffer.wrap(buffer.toByteArray());
+        int length = record.limit() - 8;
+        record.putInt(0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length);
+        record.putInt(4 + length, (int) crc.getValue());
+
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+
+        nextLsn++;
+
+        if (++unsynced >= SYNC_BATCH) {
+            sync();
+        }
+
+        return lsn;
+    }
+
+    /**
+     * Obtiene el numero de secuencia del ultimo registro agregado.
+     *
+     * @return El ultimo numero de secuencia asignado.
+     */
+    public synchronized long lastLsn() {
+        return nextLsn - 1;
+    }
+
+    /**
+     * Obtiene el tamano, en bytes, de los registros aun no incluidos en un
+     * respaldo que estan en el archivo activo.
+     *
+     * @return El tamano del archivo activo.
+     */
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Cierra el archivo activo como un segmento y comienza uno nuevo. Los
+     * registros agregados despues de este punto quedan fuera del respaldo que se
+     * genere a partir de el.
+     *
+     * Si no se puede renombrar, el archivo activo se vuelve a abrir para seguir
+     * agregando registros en el, y se lanza el error; si tampoco se puede abrir,
+     * se intenta de nuevo en el siguiente {@link #append}.
+     *
+     * @return El ultimo numero de secuencia contenido en el segmento cerrado.
+     */
+    public synchronized long rotate() throws IOException {
+        long lsn = nextLsn - 1;
+
+        if (channel.size() > 0) {
+            channel.force(false);
+            unsynced = 0;
+            channel.close();
+
+            try {
+                Files.move(path, path.resolveSibling(path.getFileName() + "." + lsn), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                openActive();
+            }
+        }
+
+        return lsn;
+    }
+
+    /**
+     * Abre el archivo activo, o lo crea si no existe, para agregar registros al
+     * final.
+     */
+    private void openActive() throws IOException {
+        FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            opened.position(opened.size());
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+
+        channel = opened;
+    }
+
+    /**
+     * Elimina los segmentos cerrados cuyos registros ya estan incluidos en un
+     * respaldo.
+     *
+     * @param lsn Ultimo numero de secuencia contenido en el respaldo.
+     */
+    public void discard(long lsn) throws IOException {
+        for (Path segment : segments(path, lsn)) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Fuerza al disco los registros pendientes.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Error: No se pudo sincronizar el diario de cambios.");
+            Console.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        syncer.shutdown();
+        sync();
+        channel.close();
+    }
+}
@@ -0,0 +1,110 @@
+package musica;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de tiempos de respuesta, en microsegundos, que se puede registrar
+ * desde varios hilos sin bloquearlos.
+ *
+ * Los tiempos se agrupan en intervalos que crecen en potencias de dos, cada una
+ * dividida en {@link #SUB_BUCKETS} partes iguales, de modo que un percentil se
+ * conoce con un error de a lo mas 1/8 de su valor y el histograma ocupa unos
+ * pocos KB sin importar cuantos tiempos registre. Los tiempos menores a
+ * {@link #SUB_BUCKETS} microsegundos tienen su propio intervalo.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Partes en que se divide cada potencia de dos.
+     */
+    public static final int SUB_BUCKETS = 8;
+
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+
+    /**
+     * Registra un tiempo.
+     *
+     * @param nanos Tiempo en nanosegundos.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(nanos / 1000, 0)));
+    }
+
+    /**
+     * Obtiene el numero de tiempos registrados.
+     */
+    public long count() {
+        long count = 0;
+
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * Obtiene un percentil de los tiempos registrados, como el limite superior
+     * del intervalo en el que cae.
+     *
+     * @param percent Percentil, entre 0 y 100.
+     * @return El tiempo en microsegundos, o 0 si no hay tiempos registrados.
+     */
+    public long percentile(double percent) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max((long) Math.ceil(total * percent / 100), 1);
+        long seen = 0;
+
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+
+        return upperBound(snapshot.length - 1);
+    }
+
+    /**
+     * Obtiene el intervalo de un tiempo en microsegundos.
+     */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Obtiene el mayor tiempo, en microsegundos, que cae en un intervalo.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (1L << exponent) + (bucket % SUB_BUCKETS) * width;
+
+        return lower + width - 1;
+    }
+}
@@ -0,0 +1,107 @@
+package musica;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Indice invertido de n-gramas sobre textos identificados por un entero, como
+ * el titulo de cada cancion por su ID, o los textos de {@link StringPool} por
+ * su codigo.
+ *
+ * Por cada secuencia de {@link #N} caracteres del texto normalizado se guardan
+ * los identificadores de los textos que la contienen. Los textos que contienen
+ * una consulta estan entre los que contienen todos sus n-gramas, por lo que
+ * basta intersectar esas listas, empezando por la mas corta, y revisar solo a
+ * los candidatos.
+ */
+public class NGramIndex {
+
+    /**
+     * Longitud de los n-gramas. Las consultas mas cortas no se pueden responder
+     * con el indice.
+     */
+    public static final int N = 3;
+
+    private final HashMap<String, IdList> postings = new HashMap<>();
+
+    /**
+     * Agrega un texto.
+     *
+     * @param id   Identificador del texto.
+     * @param text Texto normalizado.
+     */
+    public void add(int id, String text) {
+        for (int i = 0; i + N <= text.length(); i++) {
+            postings.computeIfAbsent(text.substring(i, i + N), key -> new IdList()).add(id);
+        }
+    }
+
+    /**
+     * Quita un texto.
+     *
+     * @param id   Identificador del texto.
+     * @param text Texto normalizado con el que se agrego.
+     */
+    public void remove(int id, String text) {
+        for (int i = 0; i + N <= text.length(); i++) {
+            String gram = text.substring(i, i + N);
+            IdList ids = postings.get(gram);
+
+            if (ids != null) {
+                ids.remove(id);
+
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene los textos que contienen un n-grama.
+     *
+     * @param gram N-grama normalizado de {@link #N} caracteres.
+     * @return Los identificadores, que no deben modificarse, o {@code null} si
+     *         ninguno lo contiene.
+     */
+    public IdList postings(String gram) {
+        return postings.get(gram);
+    }
+
+    /**
+     * Obtiene los textos que pueden contener una consulta. Si la consulta tiene
+     * exactamente {@link #N} caracteres, todos la contienen.
+     *
+     * @param query Consulta normalizada.
+     * @return Los identificadores candidatos, que no deben modificarse, o
+     *         {@code null} si la consulta es muy corta.
+     */
+    public IdList candidates(String query) {
+        if (query.length() < N) {
+            return null;
+        }
+
+        List<IdList> lists = new ArrayList<>();
+
+        for (int i = 0; i + N <= query.length(); i++) {
+            IdList ids = postings.get(query.substring(i, i + N));
+
+            if (ids == null) {
+                return new IdList();
+            }
+
+            lists.add(ids);
+        }
+
+        lists.sort(Comparator.comparingInt(IdList::size));
+        IdList result = lists.get(0);
+
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result = result.intersect(lists.get(i));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+package musica;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+
+/**
+ * Recorrido de todas las posiciones de una tabla, para los filtros que no se
+ * pueden responder con un indice.
+ *
+ * Las posiciones se dividen en bloques de {@link #CHUNK} filas consecutivas,
+ * que se revisan en paralelo en el {@link ForkJoinPool} comun. Cada bloque
+ * guarda sus resultados por separado y al final se unen en el orden del
+ * catalogo. Las tablas de menos de {@link #THRESHOLD} filas, o las maquinas
+ * con un solo procesador, se revisan en el hilo actual, donde repartir el
+ * trabajo cuesta mas que hacerlo.
+ */
+public final class ParallelScan {
+
+    /**
+     * Filas que revisa cada tarea.
+     */
+    public static final int CHUNK = 4096;
+
+    /**
+     * Filas a partir de las cuales se revisa en paralelo.
+     */
+    public static final int THRESHOLD = 65_536;
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Revisa si un recorrido de cierto numero de filas se hace en paralelo.
+     */
+    public static boolean parallel(int size) {
+        return size >= THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Obtiene las posiciones que cumplen con un filtro.
+     *
+     * @param size      Numero de posiciones, desde 0.
+     * @param predicate Filtro sobre cada posicion. Puede llamarse desde varios
+     *                  hilos a la vez, por lo que solo debe leer la tabla.
+     * @return Las posiciones, en orden creciente.
+     */
+    public static int[] positions(int size, IntPredicate predicate) {
+        if (!parallel(size)) {
+            return positions(0, size, predicate);
+        }
+
+        int[][] chunks = new int[(size + CHUNK - 1) / CHUNK][];
+        ForkJoinPool.commonPool().invoke(new Task(size, predicate, chunks, 0, chunks.length));
+
+        int count = 0;
+
+        for (int[] chunk : chunks) {
+            count += chunk.length;
+        }
+
+        int[] result = new int[count];
+        int offset = 0;
+
+        for (int[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, offset, chunk.length);
+            offset += chunk.length;
+        }
+
+        return result;
+    }
+
+    private static int[] positions(int from, int to, IntPredicate predicate) {
+        int[] result = new int[16];
+        int count = 0;
+
+        for (int i = from; i < to; i++) {
+            if (predicate.test(i)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+
+                result[count++] = i;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Revisa los bloques {@code [from, to)}, dividiendolos a la mitad hasta
+     * llegar a uno solo.
+     */
+    private static class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int size;
+        private final IntPredicate predicate;
+        private final int[][] chunks;
+        private final int from;
+        private final int to;
+
+        Task(int size, IntPredicate predicate, int[][] chunks, int from, int to) {
+            this.size = size;
+            this.predicate = predicate;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from] = positions(from * CHUNK, Math.min(size, (from + 1) * CHUNK), predicate);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Task(size, predicate, chunks, from, middle), new Task(size, predicate, chunks, middle, to));
+        }
+    }
+}
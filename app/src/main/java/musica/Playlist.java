@@ -1,25 +1,107 @@
 package musica;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
-// import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * Representa la lista de reproduccion de un disco.
  * 
+ * Las canciones se guardan como sus IDs en el catalogo, en un arreglo de
+ * enteros en el orden en que se agregaron, y se resuelven con
+ * {@link SongTable#byId(int)} al mostrarlas. Un mapa de cada ID a su lugar en
+ * el arreglo permite saber en O(1) si una cancion ya esta, para no repetirla, y
+ * quitarla dejando un hueco (ID 0) que se compacta cuando los huecos superan a
+ * las canciones. El tamano se lleva en KB, como el de las canciones, sumando y
+ * restando el de cada una.
+ * 
  * @author Martin Aguilar
  */
 public class Playlist implements Entity {
+    private static final long serialVersionUID = -7603271635781840772L;
+
+    /**
+     * Capacidad de un disco, en KB (450 MB).
+     */
+    public static final int CAPACITY = 450_000;
+
+    /**
+     * Numero maximo de caracteres del ID de un disco.
+     */
+    public static final int MAX_ID_LENGTH = 30;
+
+    /**
+     * Campos serializados, los de los respaldos anteriores al formato columnar,
+     * que guardaban las canciones completas y el tamano en MB.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("id", String.class),
+            new ObjectStreamField("songs", ArrayList.class),
+            new ObjectStreamField("size", float.class)
+    };
 
     private String id;
-    private ArrayList<Song> songs;
-    private float size;
+    private int[] songIds;
+    private int count;
+    private int size;
+
+    /**
+     * Lugares usados de {@link #songIds}, incluidos los huecos.
+     */
+    private transient int end;
+
+    /**
+     * Lugar en {@link #songIds} de cada cancion.
+     */
+    private transient HashMap<Integer, Integer> positions = new HashMap<>();
+
+    /**
+     * Canciones de un respaldo anterior al formato columnar, pendientes de
+     * convertir con {@link #resolveLegacySongs()}.
+     */
+    private transient ArrayList<Song> legacySongs;
 
     public Playlist(String id) {
         this.id = id;
-        songs = new ArrayList<Song>();
+        songIds = new int[8];
         this.size = 0;
     }
 
+    Playlist(String id, int[] songIds, int count, int size) {
+        this.id = id;
+        this.songIds = songIds.length < 8 ? Arrays.copyOf(songIds, 8) : songIds;
+        this.count = count;
+        this.size = size;
+        index();
+    }
+
+    /**
+     * Crea una copia de la lista de reproduccion, con su propio arreglo de
+     * canciones, para editarla sin afectar a la original.
+     * 
+     * @return La copia de la lista de reproduccion.
+     */
+    public Playlist copy() {
+        Playlist copy = new Playlist(id);
+        copy.songIds = getSongIds();
+        copy.count = count;
+        copy.size = size;
+        copy.index();
+
+        return copy;
+    }
+
     /**
      * Obtiene el identificador unico de la lista de reproduccion.
      * 
@@ -39,40 +121,238 @@ public class Playlist implements Entity {
     }
 
     /**
-     * Obtiene la lista de canciones que contiene la lista de reproduccion.
+     * Obtiene el numero de canciones en la lista de reproduccion.
      * 
-     * @return La lista de canciones que contiene la lista de reproduccion.
+     * @return El numero de canciones.
+     */
+    public int getSongCount() {
+        return count;
+    }
+
+    /**
+     * Indica si la lista de reproduccion no tiene canciones.
+     * 
+     * @return {@code true} si no tiene canciones.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Obtiene los IDs de las canciones de la lista de reproduccion.
+     * 
+     * @return Una copia de los IDs, en orden.
+     */
+    public int[] getSongIds() {
+        int[] result = new int[count];
+
+        for (int i = 0, found = 0; found < count; i++) {
+            if (songIds[i] != 0) {
+                result[found++] = songIds[i];
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Indica si una cancion esta en la lista de reproduccion.
+     * 
+     * @param songId ID de la cancion en el catalogo.
+     */
+    public boolean contains(int songId) {
+        return positions.containsKey(songId);
+    }
+
+    /**
+     * Obtiene las canciones de la lista de reproduccion, resolviendo sus IDs en
+     * el catalogo.
+     * 
+     * @param catalog Canciones del catalogo.
+     * @return Las canciones de la lista de reproduccion, en orden.
+     */
+    public List<Song> getSongs(SongTable catalog) {
+        List<Song> result = new ArrayList<Song>(count);
+
+        for (int i = 0; i < end; i++) {
+            Song song = songIds[i] != 0 ? catalog.byId(songIds[i]) : null;
+
+            if (song != null) {
+                result.add(song);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Agrega una cancion al final de la lista de reproduccion y suma su tamano,
+     * si no estaba.
+     * 
+     * @param song Cancion del catalogo.
+     * @return {@code false} si la cancion ya estaba.
+     */
+    public boolean addSong(Song song) {
+        return addSong(song.getId(), song.getSize());
+    }
+
+    /**
+     * Agrega una cancion al final de la lista de reproduccion sin construirla,
+     * si no estaba.
+     * 
+     * @param songId ID de la cancion en el catalogo.
+     * @param size   Tamano de la cancion, en KB.
+     * @return {@code false} si la cancion ya estaba.
+     */
+    public boolean addSong(int songId, int size) {
+        if (positions.putIfAbsent(songId, end) != null) {
+            return false;
+        }
+
+        if (end == songIds.length) {
+            songIds = Arrays.copyOf(songIds, Math.max(end * 2, 8));
+        }
+
+        songIds[end++] = songId;
+        count++;
+        this.size += size;
+        return true;
+    }
+
+    /**
+     * Quita una cancion de la lista de reproduccion y resta su tamano.
+     * 
+     * @param song Cancion del catalogo.
+     * @return {@code false} si la cancion no estaba.
+     */
+    public boolean removeSong(Song song) {
+        Integer position = positions.remove(song.getId());
+
+        if (position == null) {
+            return false;
+        }
+
+        songIds[position] = 0;
+        count--;
+        size -= song.getSize();
+
+        if (end - count > Math.max(count, 8)) {
+            compact();
+        }
+
+        return true;
+    }
+
+    /**
+     * Mueve las canciones al inicio del arreglo, quitando los huecos.
+     */
+    private void compact() {
+        int kept = 0;
+
+        for (int i = 0; i < end; i++) {
+            if (songIds[i] != 0) {
+                songIds[kept++] = songIds[i];
+            }
+        }
+
+        Arrays.fill(songIds, kept, end, 0);
+        count = kept;
+        end = kept;
+        positions.clear();
+
+        for (int i = 0; i < end; i++) {
+            positions.put(songIds[i], i);
+        }
+    }
+
+    /**
+     * Construye el mapa de lugares de las canciones leidas de un respaldo. Los
+     * respaldos anteriores a rechazar canciones repetidas pueden tenerlas; se
+     * conserva solo la primera, sin cambiar el tamano guardado.
      */
-    public ArrayList<Song> getSongs() {
-        return songs;
+    private void index() {
+        end = count;
+        positions = new HashMap<>();
+
+        for (int i = 0; i < end; i++) {
+            if (songIds[i] == 0 || positions.putIfAbsent(songIds[i], i) != null) {
+                songIds[i] = 0;
+                count--;
+            }
+        }
+
+        if (count != end) {
+            compact();
+        }
     }
 
     /**
-     * Establece la lista de canciones que contiene la lista de reproduccion.
+     * Quita una cancion de todas las listas de reproduccion que la contienen.
+     * Las listas afectadas se reemplazan por copias editadas, para no modificar
+     * las que pueda estar leyendo un respaldo en curso.
      * 
-     * @param songs La lista de canciones que contiene la lista de reproduccion.
+     * @param playlists Listas de reproduccion.
+     * @param song      Cancion borrada del catalogo.
+     * @return El numero de listas de reproduccion de las que se quito.
      */
-    public void setSongs(ArrayList<Song> songs) {
-        this.songs = songs;
+    public static int removeSongEverywhere(List<Playlist> playlists, Song song) {
+        int affected = 0;
+
+        for (int i = 0; i < playlists.size(); i++) {
+            Playlist playlist = playlists.get(i);
+
+            if (playlist.contains(song.getId())) {
+                Playlist copy = playlist.copy();
+                copy.removeSong(song);
+                playlists.set(i, copy);
+                affected++;
+            }
+        }
+
+        return affected;
+    }
+
+    /**
+     * Ajusta el tamano de las playlists que tienen una cancion cuyo tamano
+     * cambio. Las playlists afectadas se reemplazan por copias, por lo que las
+     * originales no se modifican.
+     *
+     * @param songId ID de la cancion.
+     * @param delta  Diferencia entre el tamano nuevo y el anterior, en KB.
+     * @return El numero de playlists ajustadas.
+     */
+    public static int resizeSongEverywhere(List<Playlist> playlists, int songId, int delta) {
+        int affected = 0;
+
+        for (int i = 0; i < playlists.size(); i++) {
+            Playlist playlist = playlists.get(i);
+
+            if (delta != 0 && playlist.contains(songId)) {
+                Playlist copy = playlist.copy();
+                copy.size += delta;
+                playlists.set(i, copy);
+                affected++;
+            }
+        }
+
+        return affected;
     }
 
     /**
      * Obtiene el tamano de la lista de reproduccion.
      * 
-     * @return El tamano de la lista de reproduccion.
+     * @return El tamano de la lista de reproduccion, en KB.
      */
-    public float getSize() {
+    public int getSize() {
         return size;
     }
 
     /**
      * Establece el tamano de la lista de reproduccion.
      * 
-     * @param size El tamano de la lista de reproduccion.
-     * 
-     * @return El tamano de la lista de reproduccion.
+     * @param size El tamano de la lista de reproduccion, en KB.
      */
-    public void setSize(float size) {
+    public void setSize(int size) {
         this.size = size;
     }
 
@@ -85,9 +365,9 @@ public class Playlist implements Entity {
      * Despliega un menu para agregar una cancion a la lista de reproduccion.
      * 
      * @param scanner
-     * @param availableSongs
+     * @param catalog Catalogo del que se eligen las canciones.
      */
-    public void scan(InteractiveScanner scanner, ArrayList<Song> availableSongs) {
+    public void scan(InteractiveScanner scanner, Catalog catalog) {
         Song songResult = null;
 
         // Debe mostrar dos metodos: por filtrado o dar a seleccionar una de todas las
@@ -106,20 +386,17 @@ public class Playlist implements Entity {
 
             switch (option) {
                 case 1 -> {
-                    songResult = Song.pick(scanner, availableSongs);
+                    songResult = Song.pick(scanner, catalog);
                 }
 
                 case 2 -> {
-                    for (int i = 0; i < availableSongs.size(); i++) {
-                        System.out.println("%d. %s - %s".formatted(i + 1, availableSongs.get(i).getArtist(),
-                                availableSongs.get(i).getTitle()));
-                    }
-
+                    SongTable availableSongs = catalog.snapshot();
+                    SongCursor cursor = SongCursor.of(availableSongs);
                     int songOption = 0;
 
                     do {
 
-                        songOption = scanner.nextInt("Opcion");
+                        songOption = cursor.select(scanner, "Opcion");
 
                         if (songOption < 1 || songOption > availableSongs.size()) {
                             // debe evitar que se entre en un ciclo infinito
@@ -133,46 +410,143 @@ public class Playlist implements Entity {
         } while (option < 1 || option > 2);
 
         if (songResult != null) {
-            if (Float.parseFloat(songResult.getSize()) > 450) {
+            if (songResult.getSize() > CAPACITY) {
                 System.out.println("Error: La cancion excede el tamano maximo de la lista de reproduccion.");
             } else {
-                if (this.size + Float.parseFloat(songResult.getSize()) > 450) {
+                if (this.size + songResult.getSize() > CAPACITY) {
                     System.out.println("Error: La cancion excede el tamano maximo de la lista de reproduccion.");
-                } else {
-                    this.songs.add(songResult);
-                    this.size += Float.parseFloat(songResult.getSize());
+                } else if (!addSong(songResult)) {
+                    System.out.println("Error: La cancion ya esta en la lista de reproduccion.");
                 }
             }
         }
     }
 
+    /**
+     * Escribe la lista de reproduccion en formato binario compacto, usado por el
+     * diario de cambios: su ID, tamano en KB y los IDs de sus canciones.
+     * 
+     * @param out Destino de los datos.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(id);
+        out.writeInt(size);
+        out.writeInt(count);
+
+        for (int i = 0; i < end; i++) {
+            if (songIds[i] != 0) {
+                out.writeInt(songIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Sobreescribe la lista de reproduccion con los datos leidos de {@code in},
+     * en el formato de {@link #write(DataOutput)}.
+     * 
+     * @param in Origen de los datos.
+     */
+    public void read(DataInput in) throws IOException {
+        id = in.readUTF();
+        size = in.readInt();
+        count = in.readInt();
+        songIds = new int[Math.max(count, 8)];
+
+        for (int i = 0; i < count; i++) {
+            songIds[i] = in.readInt();
+        }
+
+        index();
+    }
+
+    /**
+     * Las playlists solo se guardan en el respaldo columnar; sin el catalogo no
+     * se pueden escribir con las canciones completas.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException("Las playlists se guardan en el respaldo columnar.");
+    }
+
+    /**
+     * Lee una lista de reproduccion de un respaldo anterior al formato
+     * columnar. Sus canciones quedan pendientes de
+     * {@link #resolveLegacySongs()}.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = (String) fields.get("id", null);
+        size = Math.round(fields.get("size", 0f) * 1000);
+        songIds = new int[8];
+        legacySongs = (ArrayList<Song>) fields.get("songs", null);
+
+        index();
+    }
+
+    /**
+     * Convierte las canciones de un respaldo anterior al formato columnar, una
+     * vez que el catalogo les asigno uno. Las que ya no estaban en el catalogo se descartan.
+     */
+    public void resolveLegacySongs() {
+        if (legacySongs == null) {
+            return;
+        }
+
+        for (Song song : legacySongs) {
+            if (song.getId() == 0 || !addSong(song.getId(), 0)) {
+                size -= song.getSize();
+            }
+        }
+
+        legacySongs = null;
+    }
+
+    /**
+     * Escribe la lista de reproduccion como texto, una cancion a la vez, sin
+     * construir el texto completo.
+     * 
+     * @param out     Destino del texto.
+     * @param catalog Canciones del catalogo, para resolver los IDs.
+     */
+    public void print(Writer out, SongTable catalog) throws IOException {
+        out.write("Titulo: " + id + "\n");
+        out.write("----------------------------------------\n");
+        out.write("Lista de Canciones:\n");
+
+        int number = 0;
+
+        for (int i = 0; i < end; i++) {
+            Song song = songIds[i] != 0 ? catalog.byId(songIds[i]) : null;
+
+            if (song != null) {
+                if (number > 0) {
+                    out.write('\n');
+                }
+
+                out.write(++number + ". " + song.getArtist() + " - " + song.getTitle() + " ["
+                        + Song.formatLength(song.getLength()) + "] " + " (" + Song.formatSize(song.getSize()) + " MB) ");
+            }
+        }
+
+        out.write("\n----------------------------------------\n");
+        out.write("Tamaño: " + Song.formatSize(size) + " MB\n");
+    }
+
     /**
      * Convierte la lista de reproduccion a una cadena de texto.
+     * 
+     * @param catalog Canciones del catalogo, para resolver los IDs.
      */
-    @Override
-    public String toString() {
-        ArrayList<String> songs = new ArrayList<String>();
-
-        for (int i = 0; i < this.songs.size(); i++) {
-            songs.add((i + 1) + ". " + this.songs.get(i).getArtist() + " - " + this.songs.get(i).getTitle() + " ["
-                    + this.songs.get(i).getLength()[0] + ":" + this.songs.get(i).getLength()[1] + "] " + " ("
-                    + this.songs.get(i).getSize() + " MB) ");
-        }
-
-        // List<String> songs = this.songs.stream()
-        // .map(song -> ". " + song.getArtist() + " - " + song.getTitle()
-        // + "[" + song.getLength()[0] + ":" + song.getLength()[1] + "] "
-        // + " (" + song.getSize() + " MB) ")
-        // .toList();
-
-        return """
-                Titulo: %s
-                ----------------------------------------
-                Lista de Canciones:
-                %s
-                ----------------------------------------
-                Tamaño: %d MB
-                """.formatted(id, String.join("\n", songs), size);
+    public String toString(SongTable catalog) {
+        StringWriter out = new StringWriter();
+
+        try {
+            print(out, catalog);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toString();
     }
 
 }
@@ -0,0 +1,169 @@
+package musica;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lista de las playlists guardadas, en el orden en que se guardaron, con un
+ * indice por ID.
+ *
+ * Ademas de la posicion de cada ID, guarda por cada nombre base el ultimo
+ * numero que se uso para distinguir una copia ("Rock #3"), por lo que
+ * {@link #uniqueId(String)} no recorre las playlists guardadas, y un nombre que
+ * empieza como otro ("Rock" y "Rock Clasico") no cuenta como copia suya.
+ *
+ * Las playlists solo se agregan al final o se reemplazan; no se borran, por lo
+ * que una posicion sigue siendo valida aunque se agreguen otras. Varios hilos
+ * pueden leer el registro sin sincronizarse mientras uno solo a la vez lo
+ * modifica (la aplicacion lo hace sincronizada sobre si misma): cada lectura ve
+ * la playlist anterior o la nueva completa, y guardar una playlist no copia el
+ * registro. Las playlists guardadas no se modifican; se reemplazan por copias.
+ */
+public class PlaylistRegistry extends AbstractList<Playlist> implements RandomAccess {
+
+    /**
+     * Playlists, en un arreglo que se reemplaza por uno del doble de tamano
+     * cuando se llena. Las posiciones a partir de {@link #size} aun no se han
+     * publicado.
+     */
+    private volatile AtomicReferenceArray<Playlist> playlists = new AtomicReferenceArray<>(16);
+
+    /**
+     * Numero de playlists publicadas. Se actualiza despues de escribir la nueva,
+     * para que quien lo lea ya la encuentre.
+     */
+    private volatile int size;
+
+    private final ConcurrentHashMap<String, Integer> positions = new ConcurrentHashMap<>();
+    private final HashMap<String, Integer> copies = new HashMap<>();
+
+    public PlaylistRegistry() {
+    }
+
+    /**
+     * Copia un registro, con sus numeros de copia.
+     */
+    public PlaylistRegistry(PlaylistRegistry other) {
+        this((Collection<Playlist>) other);
+        copies.putAll(other.copies);
+    }
+
+    public PlaylistRegistry(Collection<Playlist> playlists) {
+        for (Playlist playlist : playlists) {
+            add(playlist);
+        }
+    }
+
+    @Override
+    public Playlist get(int index) {
+        Objects.checkIndex(index, size);
+        return playlists.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(Playlist playlist) {
+        int index = size;
+        AtomicReferenceArray<Playlist> array = playlists;
+
+        if (index == array.length()) {
+            AtomicReferenceArray<Playlist> grown = new AtomicReferenceArray<>(index * 2);
+
+            for (int i = 0; i < index; i++) {
+                grown.set(i, array.get(i));
+            }
+
+            playlists = array = grown;
+        }
+
+        // El ID se indexa despues de escribir la playlist, para que quien lo
+        // encuentre ya pueda leerla, y antes de publicar el tamano, para que
+        // quien vea el tamano encuentre todas las playlists por su ID.
+        array.set(index, playlist);
+        positions.putIfAbsent(playlist.getId(), index);
+        size = index + 1;
+        return true;
+    }
+
+    @Override
+    public Playlist set(int index, Playlist playlist) {
+        Objects.checkIndex(index, size);
+        Playlist previous = playlists.getAndSet(index, playlist);
+
+        if (!previous.getId().equals(playlist.getId())) {
+            positions.remove(previous.getId(), index);
+            positions.putIfAbsent(playlist.getId(), index);
+        }
+
+        return previous;
+    }
+
+    /**
+     * Busca la posicion de una playlist por su ID. Mientras se agrega una
+     * playlist, su posicion puede aparecer un momento antes que en
+     * {@link #size()}.
+     *
+     * @return La posicion, o -1 si no hay una playlist con ese ID.
+     */
+    public int indexOfId(String id) {
+        Integer position = positions.get(id);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Busca una playlist por su ID.
+     *
+     * @return La playlist, o {@code null} si no hay una con ese ID.
+     */
+    public Playlist byId(String id) {
+        int position = indexOfId(id);
+        return position >= 0 ? playlists.get(position) : null;
+    }
+
+    /**
+     * Obtiene un ID que no usa ninguna playlist guardada. Si el ID ya existe,
+     * se le agrega el siguiente numero de copia de ese nombre, como "Rock #1",
+     * con {@link #numbered(String, int)}. Solo debe llamarse desde el hilo que
+     * modifica el registro.
+     */
+    public String uniqueId(String id) {
+        if (!positions.containsKey(id)) {
+            return id;
+        }
+
+        int copy = copies.getOrDefault(id, 0);
+        String result;
+
+        do {
+            result = numbered(id, ++copy);
+        } while (positions.containsKey(result));
+
+        copies.put(id, copy);
+        return result;
+    }
+
+    /**
+     * Agrega un numero a un ID, como "Rock #3". Si el resultado superaria
+     * {@link Playlist#MAX_ID_LENGTH} caracteres, el ID se recorta antes del
+     * numero.
+     */
+    public static String numbered(String id, int number) {
+        String suffix = " #" + number;
+        int length = Math.min(id.length(), Playlist.MAX_ID_LENGTH - suffix.length());
+
+        if (length > 0 && Character.isHighSurrogate(id.charAt(length - 1))) {
+            length--;
+        }
+
+        return id.substring(0, length).stripTrailing() + suffix;
+    }
+}
@@ -0,0 +1,197 @@
+package musica;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Cache de los resultados de las busquedas de un {@link SongTable}, por la
+ * llave normalizada de cada {@link SongQuery}.
+ *
+ * Guarda hasta {@link #CAPACITY} resultados y descarta el usado hace mas
+ * tiempo. La tabla avisa de cada cambio, y solo se descartan los resultados
+ * que el cambio puede afectar: al agregar una cancion, los de las busquedas que
+ * cumple; al borrarla, los que la incluyen; y al modificarla, los de las
+ * busquedas sobre los campos que cambiaron.
+ *
+ * Las dos copias de un {@link Catalog} comparten el cache. Mientras se aplica
+ * un cambio no se guardan resultados, porque un lector de la copia anterior
+ * podria guardar uno sin el cambio, y los avisos de la segunda copia se
+ * ignoran, ya que repiten los de la primera.
+ */
+public class QueryCache {
+
+    /**
+     * Resultados que se guardan como maximo.
+     */
+    public static final int CAPACITY = 128;
+
+    public static final int TITLE = 1 << CatalogFile.TITLE;
+    public static final int ARTIST = 1 << CatalogFile.ARTIST;
+    public static final int AUTHOR = 1 << CatalogFile.AUTHOR;
+    public static final int GENRE = 1 << CatalogFile.GENRE;
+    public static final int DATE = 1 << 4;
+    public static final int LENGTH = 1 << 5;
+    public static final int SIZE = 1 << 6;
+
+    /**
+     * Marca de las busquedas que dependen de todas las canciones del catalogo,
+     * como la duracion mas cercana, y que se descartan al agregar o borrar
+     * cualquier cancion.
+     */
+    public static final int ROWS = 1 << 7;
+
+    private record Entry(SongQuery query, IdBitmap ids) {
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > CAPACITY) {
+                evictions++;
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    /**
+     * Copia del catalogo a la que se esta aplicando un cambio: 0 si no hay un
+     * cambio en curso, 1 la primera y 2 la segunda.
+     */
+    private int writing;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Obtiene el resultado guardado de una busqueda.
+     *
+     * @return Los IDs, que no deben modificarse, o {@code null} si no estaba.
+     */
+    public synchronized IdBitmap get(SongQuery query) {
+        Entry entry = entries.get(query.key());
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.ids();
+    }
+
+    /**
+     * Guarda el resultado de una busqueda.
+     */
+    public synchronized void put(SongQuery query, IdBitmap ids) {
+        if (writing == 0) {
+            entries.put(query.key(), new Entry(query, ids));
+        }
+    }
+
+    /**
+     * Marca el inicio de un cambio, que se aplica primero a una copia.
+     */
+    public synchronized void beginWrite() {
+        writing = 1;
+    }
+
+    /**
+     * Marca que el cambio en curso se aplica ahora a la segunda copia, cuyos
+     * avisos se ignoran.
+     */
+    public synchronized void secondCopy() {
+        writing = 2;
+    }
+
+    /**
+     * Marca el final de un cambio.
+     */
+    public synchronized void endWrite() {
+        writing = 0;
+    }
+
+    /**
+     * Descarta los resultados que puede cambiar una cancion recien agregada.
+     */
+    public synchronized void added(SongTable songs, int index) {
+        invalidate(entry -> (entry.query().fields() & ROWS) != 0 || entry.query().matches(songs, index));
+    }
+
+    /**
+     * Descarta los resultados que incluyen una cancion que se va a borrar.
+     */
+    public synchronized void removed(int id) {
+        invalidate(entry -> (entry.query().fields() & ROWS) != 0 || entry.ids().contains(id));
+    }
+
+    /**
+     * Descarta los resultados de las busquedas sobre los campos que cambiaron
+     * al reemplazar una cancion.
+     *
+     * @param fields Campos que cambiaron, como {@link #fields(Song, Song)}.
+     */
+    public synchronized void updated(int fields) {
+        if (fields != 0) {
+            invalidate(entry -> (entry.query().fields() & fields) != 0);
+        }
+    }
+
+    private void invalidate(Predicate<Entry> affected) {
+        if (writing == 2) {
+            return;
+        }
+
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (affected.test(iterator.next())) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Obtiene los campos que son distintos entre dos versiones de una cancion.
+     */
+    public static int fields(Song before, Song after) {
+        int fields = 0;
+
+        if (!Objects.equals(before.getTitle(), after.getTitle())) {
+            fields |= TITLE;
+        }
+        if (before.getArtistCode() != after.getArtistCode()) {
+            fields |= ARTIST;
+        }
+        if (before.getAuthorCode() != after.getAuthorCode()) {
+            fields |= AUTHOR;
+        }
+        if (before.getGenreCode() != after.getGenreCode()) {
+            fields |= GENRE;
+        }
+        if (!Objects.equals(before.getReleaseDate(), after.getReleaseDate())) {
+            fields |= DATE;
+        }
+        if (before.getLength() != after.getLength()) {
+            fields |= LENGTH;
+        }
+        if (before.getSize() != after.getSize()) {
+            fields |= SIZE;
+        }
+
+        return fields;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Cache de busquedas: %d aciertos, %d fallos, %d desalojadas, %d invalidadas."
+                .formatted(hits, misses, evictions, invalidations);
+    }
+}
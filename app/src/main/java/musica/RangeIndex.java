@@ -0,0 +1,76 @@
+package musica;
+
+import java.util.TreeMap;
+
+/**
+ * Indice ordenado de las canciones por un valor entero de una columna, como la
+ * fecha de lanzamiento en dias, la duracion en segundos o el tamano en KB.
+ *
+ * Las canciones con el mismo valor comparten una lista de IDs, y las listas se
+ * guardan en un arbol ordenado por el valor, por lo que un rango se responde
+ * en O(log n + k) recorriendo solo las listas que caen en el.
+ */
+public class RangeIndex {
+
+    private final TreeMap<Integer, IdList> ids = new TreeMap<>();
+
+    /**
+     * Agrega una cancion con un valor.
+     */
+    public void add(int key, int id) {
+        ids.computeIfAbsent(key, value -> new IdList()).add(id);
+    }
+
+    /**
+     * Quita una cancion con un valor.
+     */
+    public void remove(int key, int id) {
+        IdList list = ids.get(key);
+
+        if (list != null) {
+            list.remove(id);
+
+            if (list.isEmpty()) {
+                ids.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Obtiene las canciones con un valor entre dos limites, incluidos.
+     *
+     * @return Los IDs de las canciones.
+     */
+    public IdBitmap range(int from, int to) {
+        IdBitmap result = new IdBitmap();
+
+        if (from <= to) {
+            for (IdList list : ids.subMap(from, true, to, true).values()) {
+                result.addAll(list);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Obtiene las canciones con el valor mas cercano a otro. Si hay dos valores
+     * igual de cercanos, por arriba y por abajo, se incluyen ambos.
+     *
+     * @return Los IDs de las canciones, vacio si no hay ninguna.
+     */
+    public IdBitmap nearest(int key) {
+        Integer below = ids.floorKey(key);
+        Integer above = ids.ceilingKey(key);
+
+        if (below == null && above == null) {
+            return new IdBitmap();
+        } else if (below == null || (above != null && (long) above - key < (long) key - below)) {
+            return range(above, above);
+        } else if (above == null || (long) key - below < (long) above - key) {
+            return range(below, below);
+        }
+
+        return range(below, above);
+    }
+}
@@ -0,0 +1,360 @@
+package musica;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Indices de busqueda sobre las canciones de un {@link SongTable}, por ID.
+ *
+ * Los titulos tienen un {@link NGramIndex} por cancion. El artista, el autor y
+ * el genero se repiten mucho, por lo que se indexan las canciones por su
+ * codigo de {@link StringPool} en un {@link ValueIndex}, y los n-gramas solo
+ * una vez por cada texto distinto: una busqueda encuentra primero los textos
+ * que la contienen y luego une las canciones de cada uno. Las fechas de
+ * lanzamiento, las duraciones y los tamanos se indexan en un
+ * {@link RangeIndex}. Cada busqueda devuelve un {@link IdBitmap}, para
+ * combinarla con otras en un {@link SongQuery}.
+ *
+ * Se construye una vez que el catalogo termina de cargarse, y a partir de ese
+ * momento la tabla lo mantiene al agregar, reemplazar o borrar canciones, por
+ * lo que las canciones no deben modificarse directamente mientras estan en la
+ * tabla: se modifica una copia y se reemplaza con {@link SongTable#set}.
+ */
+public class SearchIndex {
+
+    /**
+     * Cancion encontrada por una busqueda aproximada.
+     *
+     * @param id         ID de la cancion.
+     * @param distance   Distancia de edicion de la consulta al texto.
+     * @param difference Diferencia de largo entre la consulta y el texto.
+     */
+    public record Match(int id, int distance, int difference) {
+
+        /**
+         * Orden de los resultados: primero los mas parecidos, y entre ellos los
+         * de largo mas cercano a la consulta.
+         */
+        public static final Comparator<Match> RANKING = Comparator.comparingInt(Match::distance)
+                .thenComparingInt(Match::difference).thenComparingInt(Match::id);
+    }
+
+    private final NGramIndex titles = new NGramIndex();
+    private final NGramIndex codes = new NGramIndex();
+    private final BitSet indexedCodes = new BitSet();
+    private final ValueIndex[] values = new ValueIndex[4];
+    private final RangeIndex dates = new RangeIndex();
+    private final RangeIndex lengths = new RangeIndex();
+    private final RangeIndex sizes = new RangeIndex();
+
+    public SearchIndex() {
+        values[CatalogFile.ARTIST] = new ValueIndex();
+        values[CatalogFile.AUTHOR] = new ValueIndex();
+        values[CatalogFile.GENRE] = new ValueIndex();
+    }
+
+    /**
+     * Construye los indices de todas las canciones de una tabla.
+     */
+    public static SearchIndex build(SongTable songs) {
+        SearchIndex index = new SearchIndex();
+
+        for (int i = 0; i < songs.size(); i++) {
+            index.add(songs, i);
+        }
+
+        return index;
+    }
+
+    /**
+     * Normaliza un texto para buscarlo: en minusculas, sin acentos ni otras
+     * marcas diacriticas, y con los espacios en blanco reducidos a uno solo
+     * entre palabras, de modo que "Cancion" encuentra "  canción".
+     */
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        boolean space = false;
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                space = result.length() > 0;
+            } else {
+                if (space) {
+                    result.append(' ');
+                    space = false;
+                }
+
+                result.append(Character.toLowerCase(c));
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Agrega la cancion en una posicion de la tabla.
+     */
+    public void add(SongTable songs, int index) {
+        int id = songs.id(index);
+        titles.add(id, songs.titleKey(index));
+
+        for (int column = CatalogFile.ARTIST; column <= CatalogFile.GENRE; column++) {
+            int code = songs.code(column, index);
+            values[column].add(code, id);
+
+            if (code >= 0 && !indexedCodes.get(code)) {
+                codes.add(code, StringPool.CATALOG.key(code));
+                indexedCodes.set(code);
+            }
+        }
+
+        int epochDay = songs.epochDay(index);
+
+        if (epochDay != CatalogFile.NO_DATE) {
+            dates.add(epochDay, id);
+        }
+
+        lengths.add(songs.lengthSeconds(index), id);
+        sizes.add(songs.size(index), id);
+    }
+
+    /**
+     * Quita la cancion en una posicion de la tabla, antes de que se borre o
+     * reemplace.
+     */
+    public void remove(SongTable songs, int index) {
+        int id = songs.id(index);
+        titles.remove(id, songs.titleKey(index));
+
+        for (int column = CatalogFile.ARTIST; column <= CatalogFile.GENRE; column++) {
+            values[column].remove(songs.code(column, index), id);
+        }
+
+        dates.remove(songs.epochDay(index), id);
+        lengths.remove(songs.lengthSeconds(index), id);
+        sizes.remove(songs.size(index), id);
+    }
+
+    /**
+     * Busca las canciones que contienen un texto en una columna.
+     *
+     * @param songs  Tabla sobre la que se construyo el indice.
+     * @param column Columna ({@link CatalogFile#TITLE}, {@link CatalogFile#ARTIST}
+     *               o {@link CatalogFile#AUTHOR}).
+     * @param query  Texto normalizado.
+     * @return Los IDs de las canciones, o {@code null} si la consulta es muy
+     *         corta para buscar titulos con el indice.
+     */
+    public IdBitmap containing(SongTable songs, int column, String query) {
+        if (column == CatalogFile.TITLE) {
+            IdList candidates = titles.candidates(query);
+
+            if (candidates == null || query.length() == NGramIndex.N) {
+                return candidates != null ? IdBitmap.of(candidates) : null;
+            }
+
+            IdBitmap result = new IdBitmap();
+
+            for (int i = 0; i < candidates.size(); i++) {
+                int index = songs.indexOfId(candidates.get(i));
+
+                if (index >= 0 && songs.titleKey(index).contains(query)) {
+                    result.add(candidates.get(i));
+                }
+            }
+
+            return result;
+        }
+
+        return withCodes(column, codes.candidates(query), value -> value.contains(query));
+    }
+
+    /**
+     * Busca las canciones cuyo texto en una columna se parece a una consulta,
+     * con hasta {@link EditDistance#tolerance} ediciones.
+     *
+     * Solo se revisan los textos que comparten suficientes n-gramas con la
+     * consulta: cada edicion cambia a lo mas {@link NGramIndex#N} de sus
+     * n-gramas, por lo que un texto a {@code d} ediciones esta en alguna de las
+     * {@code N * d + 1} listas de n-gramas mas cortas. Si la consulta es muy
+     * corta para que ese filtro descarte algo, se revisan todos: los titulos,
+     * con {@link ParallelScan}, y para el artista y el autor, los textos
+     * distintos del diccionario, que son muchos menos que las canciones.
+     *
+     * @param songs  Tabla sobre la que se construyo el indice.
+     * @param column Columna ({@link CatalogFile#TITLE}, {@link CatalogFile#ARTIST}
+     *               o {@link CatalogFile#AUTHOR}).
+     * @param query  Texto normalizado.
+     * @return Las canciones encontradas, en el orden de {@link Match#RANKING}.
+     */
+    public List<Match> similar(SongTable songs, int column, String query) {
+        int grams = query.length() - NGramIndex.N + 1;
+        int max = EditDistance.tolerance(query.length());
+        boolean filtered = grams - NGramIndex.N * max >= 1;
+        List<Match> result = new ArrayList<>();
+
+        if (column == CatalogFile.TITLE) {
+            IntConsumer verify = index -> {
+                String title = songs.titleKey(index);
+                int distance = EditDistance.within(query, title, max);
+
+                if (distance <= max) {
+                    result.add(new Match(songs.id(index), distance, Math.abs(title.length() - query.length())));
+                }
+            };
+
+            if (filtered) {
+                candidates(titles, query, max).forEach(id -> {
+                    int index = songs.indexOfId(id);
+
+                    if (index >= 0) {
+                        verify.accept(index);
+                    }
+                });
+            } else {
+                for (int index : ParallelScan.positions(songs.size(),
+                        i -> EditDistance.within(query, songs.titleKey(i), max) <= max)) {
+                    verify.accept(index);
+                }
+            }
+        } else {
+            IdBitmap candidates = filtered ? candidates(codes, query, max) : null;
+            IntConsumer verify = code -> {
+                IdList ids = values[column].get(code);
+
+                if (ids != null) {
+                    String value = StringPool.CATALOG.key(code);
+                    int distance = EditDistance.within(query, value, max);
+
+                    for (int i = 0; distance <= max && i < ids.size(); i++) {
+                        result.add(new Match(ids.get(i), distance, Math.abs(value.length() - query.length())));
+                    }
+                }
+            };
+
+            if (candidates != null) {
+                candidates.forEach(verify);
+            } else {
+                for (int code = 0; code < values[column].limit(); code++) {
+                    verify.accept(code);
+                }
+            }
+        }
+
+        result.sort(Match.RANKING);
+        return result;
+    }
+
+    /**
+     * Obtiene los textos que pueden estar a {@code max} ediciones de una
+     * consulta: los de sus {@code N * max + 1} listas de n-gramas mas cortas.
+     */
+    private static IdBitmap candidates(NGramIndex index, String query, int max) {
+        List<IdList> lists = new ArrayList<>();
+
+        for (int i = 0; i + NGramIndex.N <= query.length(); i++) {
+            IdList ids = index.postings(query.substring(i, i + NGramIndex.N));
+            lists.add(ids != null ? ids : new IdList());
+        }
+
+        lists.sort(Comparator.comparingInt(IdList::size));
+        IdBitmap result = new IdBitmap();
+
+        for (int i = 0; i < Math.min(NGramIndex.N * max + 1, lists.size()); i++) {
+            result.addAll(lists.get(i));
+        }
+
+        return result;
+    }
+
+    /**
+     * Busca las canciones de un genero, sin distinguir mayusculas.
+     *
+     * @param genre Genero normalizado.
+     * @return Los IDs de las canciones.
+     */
+    public IdBitmap withGenre(String genre) {
+        return withCodes(CatalogFile.GENRE, null, value -> value.equals(genre));
+    }
+
+    /**
+     * Une las canciones de una columna cuyo texto normalizado cumple con un
+     * filtro.
+     *
+     * @param column     Columna ({@link CatalogFile#ARTIST},
+     *                   {@link CatalogFile#AUTHOR} o {@link CatalogFile#GENRE}).
+     * @param candidates Codigos a revisar, o {@code null} para revisar todos.
+     * @param matches    Filtro sobre el texto normalizado.
+     * @return Los IDs de las canciones.
+     */
+    private IdBitmap withCodes(int column, IdList candidates, Predicate<String> matches) {
+        IdBitmap result = new IdBitmap();
+        int count = candidates != null ? candidates.size() : values[column].limit();
+
+        for (int i = 0; i < count; i++) {
+            int code = candidates != null ? candidates.get(i) : i;
+            IdList ids = values[column].get(code);
+
+            if (ids != null && matches.test(StringPool.CATALOG.key(code))) {
+                result.addAll(ids);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Busca las canciones lanzadas entre dos fechas, incluidas.
+     *
+     * @param from Primera fecha, en dias desde 1970-01-01.
+     * @param to   Ultima fecha, en dias desde 1970-01-01.
+     * @return Los IDs de las canciones.
+     */
+    public IdBitmap releasedBetween(int from, int to) {
+        return dates.range(from, to);
+    }
+
+    /**
+     * Busca las canciones que duran entre dos duraciones, incluidas.
+     *
+     * @param from Duracion minima, en segundos.
+     * @param to   Duracion maxima, en segundos.
+     * @return Los IDs de las canciones.
+     */
+    public IdBitmap lastingBetween(int from, int to) {
+        return lengths.range(from, to);
+    }
+
+    /**
+     * Busca las canciones con la duracion mas cercana a otra.
+     *
+     * @param length Duracion en segundos.
+     * @return Los IDs de las canciones.
+     */
+    public IdBitmap nearestLength(int length) {
+        return lengths.nearest(length);
+    }
+
+    /**
+     * Busca las canciones con un tamano entre dos tamanos, incluidos.
+     *
+     * @param from Tamano minimo, en KB.
+     * @param to   Tamano maximo, en KB.
+     * @return Los IDs de las canciones.
+     */
+    public IdBitmap sizedBetween(int from, int to) {
+        return sizes.range(from, to);
+    }
+}
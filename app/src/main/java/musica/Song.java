@@ -1,59 +1,144 @@
 package musica;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Representa una cancion en la base de datos.
  * 
+ * El artista, el autor y el genero se repiten entre muchas canciones, por lo
+ * que se guardan como codigos de {@link StringPool#CATALOG}. El tamano se
+ * guarda en KB, para sumarlo y compararlo sin redondeos.
+ * 
  * @author Martin Aguilar
  */
 public class Song implements Entity {
+    private static final long serialVersionUID = -3268880494148768858L;
+
+    /**
+     * Campos serializados, los de los respaldos anteriores al formato columnar,
+     * para que se puedan leer.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("title", String.class),
+            new ObjectStreamField("artist", String.class),
+            new ObjectStreamField("author", String.class),
+            new ObjectStreamField("length", int[].class),
+            new ObjectStreamField("releaseDate", LocalDate.class),
+            new ObjectStreamField("genre", String.class),
+            new ObjectStreamField("size", String.class)
+    };
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private int id;
     private String title;
-    private String artist;
-    private String author;
-    private int[] length;
+    private int artist;
+    private int author;
+    private int length;
     private LocalDate releaseDate;
-    private String genre;
-    private String size;
+    private int genre;
+    private int size;
+
+    /**
+     * Titulo normalizado con {@link SearchIndex#normalize(String)}, o
+     * {@code null} si aun no se calcula. No se guarda al serializar.
+     */
+    private String titleKey;
 
     public Song() {
         title = "";
-        length = new int[] { 0, 0 };
-        artist = "";
-        author = "";
+        length = 0;
+        artist = StringPool.CATALOG.code("");
+        author = artist;
         releaseDate = null;
-        genre = "";
-        size = "";
+        genre = artist;
+        size = 0;
     }
 
     @Override
     public void scan(InteractiveScanner scanner) {
-        this.title = scanner.nextLine("Titulo de la Cancion", 30);
+        setTitle(scanner.nextLine("Titulo de la Cancion", 30));
         this.length = scanner.nextSongLength("Duracion (Minutos:Segundos)");
-        this.artist = scanner.nextLineAlphabetic("Artista", 20);
-        this.author = scanner.nextLineAlphabetic("Autor", 20);
+        setArtist(scanner.nextLineAlphabetic("Artista", 20));
+        setAuthor(scanner.nextLineAlphabetic("Autor", 20));
         this.releaseDate = scanner.nextDate("Fecha de lanzamiento (dd/mm/aaaa)");
-        this.genre = scanner.nextLineAlphabetic("Genero", 20);
-        this.size = Float.toString(((length[0] * 2048) + (length[1] * 34)) / 1000);
+        setGenre(scanner.nextLineAlphabetic("Genero", 20));
+        this.size = sizeOf(length);
     }
 
     /**
-     * Realiza una busqueda en la lista de canciones por multiples criterios, que
-     * seran seleccionados por el usuario.
+     * Calcula el tamano de una cancion a partir de su duracion.
+     * 
+     * @param length Duracion de la cancion en segundos.
+     * @return El tamano en KB.
+     */
+    public static int sizeOf(int length) {
+        return length / 60 * 2048 + length % 60 * 34;
+    }
+
+    /**
+     * Da formato de MB a un tamano, sin redondearlo.
+     * 
+     * @param size Tamano en KB.
+     * @return El tamano en MB, como {@code 6.692}.
+     */
+    public static String formatSize(int size) {
+        return size / 1000 + "." + String.format("%03d", size % 1000);
+    }
+
+    /**
+     * Convierte un tamano en MB, como los que se guardaban antes de usar KB, a
+     * KB.
      * 
-     * @param songs Lista de canciones disponibles.
-     * @return Lista de canciones que cumplen con los criterios de busqueda.
+     * @param size Tamano en MB; vacio para las canciones sin tamano.
+     * @return El tamano en KB.
+     * @throws NumberFormatException Si no es un numero.
      */
-    public static List<Song> filter(ArrayList<Song> songs, InteractiveScanner scanner) {
-        List<Song> results = new ArrayList<Song>();
+    public static int parseSize(String size) {
+        if (size == null || size.isBlank()) {
+            return 0;
+        }
 
+        return new BigDecimal(size.trim()).movePointRight(3).setScale(0, RoundingMode.HALF_UP).intValueExact();
+    }
+
+    /**
+     * Da formato de minutos:segundos a una duracion.
+     * 
+     * @param length Duracion en segundos.
+     * @return La duracion, como {@code 3:05}.
+     */
+    public static String formatLength(int length) {
+        return length / 60 + ":" + (length % 60 < 10 ? "0" : "") + length % 60;
+    }
+
+    /**
+     * Realiza una busqueda en la lista de canciones por multiples criterios, que
+     * seran seleccionados por el usuario y deben cumplirse todos. Los criterios
+     * se combinan en un {@link SongQuery}; las canciones encontradas solo se
+     * construyen al mostrar su pagina.
+     * 
+     * @param catalog Catalogo en el que se busca.
+     * @return Recorrido por las canciones que cumplen con los criterios de
+     *         busqueda, sobre una copia del catalogo tomada al buscar, o
+     *         {@code null} si se cancela.
+     */
+    public static SongCursor filter(Catalog catalog, InteractiveScanner scanner) {
+        SongQuery query = new SongQuery();
+        String another = "n";
         int option = 0;
 
         do {
-            System.out.println("Buscar por...");
+            System.out.println(query.isEmpty() ? "Buscar por..." : "Y ademas por...");
             System.out.println("""
                     1. Titulo
                     2. Artista
@@ -62,120 +147,297 @@ public class Song implements Entity {
                     5. Genero
                     6. Duracion
                     7. Tamaño
+                    8. Parecido (titulo, artista o autor)
                     0. Cancelar""");
 
             option = scanner.nextInt("Opcion");
 
             switch (option) {
-                case 1 -> {
-                    String title = scanner.nextLine("Titulo", 30);
-                    results = songs.stream().filter(song -> song.getTitle().toLowerCase().contains(title.toLowerCase()))
-                            .toList();
-                }
+                case 1 -> query.containing(CatalogFile.TITLE, scanner.nextLine("Titulo", 30));
 
-                case 2 -> {
-                    String artist = scanner.nextLineAlphabetic("Artista", 20);
-                    results = songs.stream()
-                            .filter(song -> song.getArtist().toLowerCase().contains(artist.toLowerCase())).toList();
-                }
+                case 2 -> query.containing(CatalogFile.ARTIST, scanner.nextLineAlphabetic("Artista", 20));
 
-                case 3 -> {
-                    String author = scanner.nextLineAlphabetic("Autor", 20);
-                    results = songs.stream()
-                            .filter(song -> song.getAuthor().toLowerCase().contains(author.toLowerCase())).toList();
-                }
+                case 3 -> query.containing(CatalogFile.AUTHOR, scanner.nextLineAlphabetic("Autor", 20));
 
-                case 4 -> {
-                    LocalDate releaseDate = scanner.nextDate("Fecha de lanzamiento (dd/mm/aaaa)");
-                    results = songs.stream().filter(song -> song.getReleaseDate().equals(releaseDate)).toList();
-                }
+                case 4 -> filterByReleaseDate(query, scanner);
 
-                case 5 -> {
-                    String genre = scanner.nextLineAlphabetic("Genero", 20);
-                    results = songs.stream().filter(song -> song.getGenre().toLowerCase().equals(genre.toLowerCase()))
-                            .toList();
-                }
+                case 5 -> query.genre(scanner.nextLineAlphabetic("Genero", 20));
 
-                case 6 -> {
-                    int[] length = scanner.nextSongLength("Duracion (Minutos:Segundos)");
-                    results = songs.stream().filter(song -> song.getLength().equals(length)).toList();
-                }
+                case 6 -> filterByLength(query, scanner);
+
+                case 7 -> filterBySize(query, scanner);
 
-                case 7 -> {
-                    String size = scanner.nextMb("Tamaño de la cancion (MB)");
-                    results = songs.stream().filter(song -> song.getSize().equals(size)).toList();
+                case 8 -> {
+                    return filterBySimilarity(catalog, query, scanner);
                 }
 
                 case 0 -> {
                     System.out.println("Cancelando...");
-                    results = new ArrayList<Song>();
-                    results.add(new Song());
+                    return null;
                 }
 
                 default -> {
                     System.out.println("Opcion invalida");
                 }
             }
-        } while (option < 0 || option > 7);
 
-        return results;
+            if (option >= 1 && option <= 7) {
+                another = scanner.nextYesNo("Desea agregar otro criterio? (s/n)");
+            }
+        } while (option < 0 || option > 7 || another.equals("s"));
+
+        return catalog.read(query::cursor);
+    }
+
+    /**
+     * Termina la busqueda con los titulos, artistas o autores que se parecen a
+     * un texto, aunque tenga errores de escritura, entre las canciones que
+     * cumplen con los criterios anteriores.
+     */
+    private static SongCursor filterBySimilarity(Catalog catalog, SongQuery query, InteractiveScanner scanner) {
+        int option;
+
+        do {
+            System.out.println("""
+                    Parecido en...
+                    1. Titulo
+                    2. Artista
+                    3. Autor""");
+
+            option = scanner.nextInt("Opcion");
+
+            switch (option) {
+                case 1 -> {
+                    return similar(catalog, query, CatalogFile.TITLE, scanner.nextLine("Titulo", 30));
+                }
+                case 2 -> {
+                    return similar(catalog, query, CatalogFile.ARTIST, scanner.nextLineAlphabetic("Artista", 20));
+                }
+                case 3 -> {
+                    return similar(catalog, query, CatalogFile.AUTHOR, scanner.nextLineAlphabetic("Autor", 20));
+                }
+                default -> System.out.println("Opcion invalida");
+            }
+        } while (true);
+    }
+
+    private static SongCursor similar(Catalog catalog, SongQuery query, int column, String text) {
+        return catalog.read(songs -> SongCursor.of(songs.snapshot(),
+                query.similar(songs, column, text, SongQuery.SIMILAR_LIMIT)));
+    }
+
+    /**
+     * Agrega un criterio por fecha de lanzamiento: en una fecha, antes o
+     * despues de ella, entre dos fechas o en una decada.
+     */
+    private static void filterByReleaseDate(SongQuery query, InteractiveScanner scanner) {
+        int option;
+
+        do {
+            System.out.println("""
+                    1. En una fecha
+                    2. Antes de una fecha
+                    3. Despues de una fecha
+                    4. Entre dos fechas
+                    5. En una decada""");
+
+            option = scanner.nextInt("Opcion");
+
+            if (option < 1 || option > 5) {
+                System.out.println("Opcion invalida");
+            }
+        } while (option < 1 || option > 5);
+
+        switch (option) {
+            case 1 -> {
+                int day = epochDay(scanner, "Fecha de lanzamiento (dd/mm/aaaa)");
+                query.releasedBetween(day, day);
+            }
+
+            case 2 -> {
+                int day = epochDay(scanner, "Antes de (dd/mm/aaaa)");
+                query.releasedBetween(Integer.MIN_VALUE + 1, day - 1);
+            }
+
+            case 3 -> {
+                int day = epochDay(scanner, "Despues de (dd/mm/aaaa)");
+                query.releasedBetween(day + 1, Integer.MAX_VALUE);
+            }
+
+            case 4 -> {
+                int from = epochDay(scanner, "Desde (dd/mm/aaaa)");
+                int to = epochDay(scanner, "Hasta (dd/mm/aaaa)");
+                query.releasedBetween(Math.min(from, to), Math.max(from, to));
+            }
+
+            default -> {
+                int decade = Math.min(scanner.nextInt("Decada (por ejemplo, 1990)"), 9999) / 10 * 10;
+                query.releasedBetween((int) LocalDate.of(decade, 1, 1).toEpochDay(),
+                        (int) LocalDate.of(decade + 9, 12, 31).toEpochDay());
+            }
+        }
+    }
+
+    private static int epochDay(InteractiveScanner scanner, String prompt) {
+        return (int) scanner.nextDate(prompt).toEpochDay();
+    }
+
+    /**
+     * Agrega un criterio por duracion: exacta, minima, maxima, entre dos
+     * duraciones o la mas cercana a una.
+     */
+    private static void filterByLength(SongQuery query, InteractiveScanner scanner) {
+        int option;
+
+        do {
+            System.out.println("""
+                    1. Duracion exacta
+                    2. Al menos
+                    3. A lo mas
+                    4. Entre dos duraciones
+                    5. La mas cercana""");
+
+            option = scanner.nextInt("Opcion");
+
+            if (option < 1 || option > 5) {
+                System.out.println("Opcion invalida");
+            }
+        } while (option < 1 || option > 5);
+
+        switch (option) {
+            case 1 -> {
+                int length = scanner.nextSongLength("Duracion (Minutos:Segundos)");
+                query.lastingBetween(length, length);
+            }
+
+            case 2 -> query.lastingBetween(scanner.nextSongLength("Al menos (Minutos:Segundos)"), Integer.MAX_VALUE);
+
+            case 3 -> query.lastingBetween(0, scanner.nextSongLength("A lo mas (Minutos:Segundos)"));
+
+            case 4 -> {
+                int from = scanner.nextSongLength("Desde (Minutos:Segundos)");
+                int to = scanner.nextSongLength("Hasta (Minutos:Segundos)");
+                query.lastingBetween(Math.min(from, to), Math.max(from, to));
+            }
+
+            default -> query.nearestLength(scanner.nextSongLength("Duracion (Minutos:Segundos)"));
+        }
+    }
+
+    /**
+     * Agrega un criterio por tamano: exacto, entre dos tamanos o que quepa en
+     * el espacio libre de un disco.
+     */
+    private static void filterBySize(SongQuery query, InteractiveScanner scanner) {
+        int option;
+
+        do {
+            System.out.println("""
+                    1. Tamaño exacto
+                    2. Entre dos tamaños
+                    3. Que quepan en el espacio libre""");
+
+            option = scanner.nextInt("Opcion");
+
+            if (option < 1 || option > 3) {
+                System.out.println("Opcion invalida");
+            }
+        } while (option < 1 || option > 3);
+
+        switch (option) {
+            case 1 -> {
+                int size = scanner.nextMb("Tamaño de la cancion (MB)");
+                query.sizedBetween(size, size);
+            }
+
+            case 2 -> {
+                int from = scanner.nextMb("Desde (MB)");
+                int to = scanner.nextMb("Hasta (MB)");
+                query.sizedBetween(Math.min(from, to), Math.max(from, to));
+            }
+
+            default -> query.sizedBetween(0, scanner.nextMb("Espacio libre (MB)"));
+        }
     }
 
     /**
      * Muestra un menu para seleccionar una cancion de la lista de canciones por su
      * titulo, de manera interactiva.
      * 
-     * @param availableSongs Lista de canciones disponibles.
+     * @param catalog Catalogo en el que se busca.
      * @return La cancion seleccionada.
      */
-    public static Song pick(InteractiveScanner scanner, ArrayList<Song> availableSongs) {
+    public static Song pick(InteractiveScanner scanner, Catalog catalog) {
         Song result = null;
-        List<Song> results;
+        SongCursor results;
         boolean shouldCancel = false;
 
         do {
-            results = Song.filter(availableSongs, scanner);
-
-            if (!results.isEmpty()) {
-                if (!results.get(0).getTitle().isBlank()) {
-                    System.out.println("Selecciona una cancion:");
-                    for (int i = 0; i < results.size(); i++) {
-                        System.out
-                                .println(i + 1 + ". " + results.get(i).getArtist() + " - " + results.get(i).getTitle());
-                    }
-
-                    int option;
-
-                    do {
-                        option = scanner.nextInt("Opcion");
-
-                        if (option < 1 || option > results.size()) {
-                            System.out.println("Opcion invalida");
-                        } else {
-                            result = results.get(option - 1);
-                        }
-                    } while (option < 1 || option > results.size());
-                } else {
-                    shouldCancel = true;
-                }
+            results = Song.filter(catalog, scanner);
+
+            if (results == null) {
+                shouldCancel = true;
+            } else if (!results.isEmpty()) {
+                result = results.choose(scanner);
             } else {
                 System.out.println("Error: No se encontraron resultados");
             }
-        } while (results.isEmpty() && !shouldCancel);
+        } while (result == null && !shouldCancel);
 
         return result;
     }
 
+    /**
+     * Obtiene el identificador de la cancion en el catalogo. Es asignado al
+     * agregarla y no cambia mientras exista.
+     * 
+     * @return El identificador, o 0 si la cancion no esta en el catalogo.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Establece el identificador de la cancion en el catalogo.
+     * 
+     * @param id El identificador de la cancion.
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Crea una copia de la cancion, con el mismo ID, para modificarla sin
+     * afectar a la original.
+     * 
+     * @return La copia de la cancion.
+     */
+    public Song copy() {
+        Song copy = new Song();
+        copy.id = id;
+        copy.title = title;
+        copy.titleKey = titleKey;
+        copy.artist = artist;
+        copy.author = author;
+        copy.length = length;
+        copy.releaseDate = releaseDate;
+        copy.genre = genre;
+        copy.size = size;
+
+        return copy;
+    }
+
     public void setTitle(String title) {
         this.title = title;
+        this.titleKey = null;
     }
 
     public void setArtist(String artist) {
-        this.artist = artist;
+        this.artist = StringPool.CATALOG.code(artist);
     }
 
     public void setAuthor(String author) {
-        this.author = author;
+        this.author = StringPool.CATALOG.code(author);
     }
 
     public void setReleaseDate(LocalDate releaseDate) {
@@ -183,10 +445,13 @@ public class Song implements Entity {
     }
 
     public void setGenre(String genre) {
-        this.genre = genre;
+        this.genre = StringPool.CATALOG.code(genre);
     }
 
-    public void setSize(String size) {
+    /**
+     * @param size El tamano de la cancion en KB.
+     */
+    public void setSize(int size) {
         this.size = size;
     }
 
@@ -194,12 +459,27 @@ public class Song implements Entity {
         return title;
     }
 
+    /**
+     * Obtiene la llave de busqueda del titulo, que se calcula una sola vez
+     * despues de cada cambio.
+     */
+    public String getTitleKey() {
+        String key = titleKey;
+
+        if (key == null) {
+            key = SearchIndex.normalize(title);
+            titleKey = key;
+        }
+
+        return key;
+    }
+
     public String getArtist() {
-        return artist;
+        return StringPool.CATALOG.get(artist);
     }
 
     public String getAuthor() {
-        return author;
+        return StringPool.CATALOG.get(author);
     }
 
     public LocalDate getReleaseDate() {
@@ -207,40 +487,129 @@ public class Song implements Entity {
     }
 
     public String getGenre() {
+        return StringPool.CATALOG.get(genre);
+    }
+
+    int getArtistCode() {
+        return artist;
+    }
+
+    void setArtistCode(int artist) {
+        this.artist = artist;
+    }
+
+    int getAuthorCode() {
+        return author;
+    }
+
+    void setAuthorCode(int author) {
+        this.author = author;
+    }
+
+    int getGenreCode() {
         return genre;
     }
 
-    public String getSize() {
+    void setGenreCode(int genre) {
+        this.genre = genre;
+    }
+
+    /**
+     * @return El tamano de la cancion en KB.
+     */
+    public int getSize() {
         return size;
     }
 
-    public int[] getLength() {
+    /**
+     * @return La duracion de la cancion en segundos.
+     */
+    public int getLength() {
         return length;
     }
 
-    public void setLength(int[] length) {
+    /**
+     * @param length La duracion de la cancion en segundos.
+     */
+    public void setLength(int length) {
         this.length = length;
+    }
+
+    /**
+     * Escribe los datos de la cancion en formato binario compacto, usado por el
+     * diario de cambios, con la duracion en segundos y el tamano en KB.
+     * 
+     * @param out Destino de los datos.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(title);
+        out.writeInt(length);
+        out.writeUTF(getArtist());
+        out.writeUTF(getAuthor());
+        out.writeLong(releaseDate == null ? Long.MIN_VALUE : releaseDate.toEpochDay());
+        out.writeUTF(getGenre());
+        out.writeInt(size);
+    }
+
+    /**
+     * Sobreescribe los datos de la cancion con los leidos de {@code in}, en el
+     * formato de {@link #write(DataOutput)}.
+     * 
+     * @param in Origen de los datos.
+     */
+    public void read(DataInput in) throws IOException {
+        setTitle(in.readUTF());
+        length = in.readInt();
+        setArtist(in.readUTF());
+        setAuthor(in.readUTF());
+        long epochDay = in.readLong();
+        releaseDate = epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+        setGenre(in.readUTF());
+        size = in.readInt();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("title", title);
+        fields.put("artist", getArtist());
+        fields.put("author", getAuthor());
+        fields.put("length", new int[] { length / 60, length % 60 });
+        fields.put("releaseDate", releaseDate);
+        fields.put("genre", getGenre());
+        fields.put("size", formatSize(size));
+        out.writeFields();
+    }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        title = (String) fields.get("title", null);
+        setArtist((String) fields.get("artist", null));
+        setAuthor((String) fields.get("author", null));
+        int[] minutesAndSeconds = (int[]) fields.get("length", null);
+        length = minutesAndSeconds == null ? 0 : minutesAndSeconds[0] * 60 + minutesAndSeconds[1];
+        releaseDate = (LocalDate) fields.get("releaseDate", null);
+        setGenre((String) fields.get("genre", null));
+        size = parseSize((String) fields.get("size", null));
     }
 
     @Override
     public String toString() {
-        // Primero crea una variable que tenga el formato que le quieres dar
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-
-        return """
-
-                        Nombre de la cancion: %s
-                        Duracion: %s
-                        Artista: %s
-                        Autor: %s
-                        Fecha de lanzamiento: %s
-                        Genero: %s
-                        Tamaño de la cancion: %s MB
-
-                """.formatted(this.title,
-                Integer.toString(this.length[0]) + ":" + Integer.toString(this.length[1]),
-                this.artist,
-                this.author, this.releaseDate.format(formatter), this.genre, this.size);
+        // Se arma en un solo buffer, sin el analisis de formato de formatted(),
+        // porque los listados llaman a este metodo por cada cancion.
+        String indent = " ".repeat(8);
+        StringBuilder builder = new StringBuilder(256);
+
+        builder.append('\n');
+        builder.append(indent).append("Nombre de la cancion: ").append(this.title).append('\n');
+        builder.append(indent).append("Duracion: ").append(formatLength(this.length)).append('\n');
+        builder.append(indent).append("Artista: ").append(getArtist()).append('\n');
+        builder.append(indent).append("Autor: ").append(getAuthor()).append('\n');
+        builder.append(indent).append("Fecha de lanzamiento: ")
+                .append(this.releaseDate != null ? DATE_FORMAT.format(this.releaseDate) : "").append('\n');
+        builder.append(indent).append("Genero: ").append(getGenre()).append('\n');
+        builder.append(indent).append("Tamaño de la cancion: ").append(formatSize(this.size)).append(" MB\n");
+        builder.append('\n');
+
+        return builder.toString();
     }
 }
@@ -0,0 +1,314 @@
+package musica;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Recorrido por paginas de un listado de canciones, como el catalogo completo
+ * o el resultado de un {@link SongQuery}.
+ *
+ * El listado solo guarda como obtener el ID de la cancion en cada posicion;
+ * las canciones se construyen al mostrar la pagina en la que estan, con
+ * {@link SongTable#view(int)}, y no se conservan despues. Para un resultado,
+ * la posicion se busca directamente en su {@link IdBitmap} con
+ * {@link IdBitmap#select(int)}, sin recorrer las paginas anteriores.
+ */
+public class SongCursor {
+
+    /**
+     * Canciones que se muestran por pagina.
+     */
+    public static final int PAGE_SIZE = 10;
+
+    private final SongTable table;
+    private final int size;
+    private final IntUnaryOperator ids;
+    private final IdBitmap bitmap;
+    private int page;
+
+    private SongCursor(SongTable table, int size, IntUnaryOperator ids, IdBitmap bitmap) {
+        this.table = table;
+        this.size = size;
+        this.ids = ids;
+        this.bitmap = bitmap;
+    }
+
+    /**
+     * Crea un recorrido por todas las canciones de una tabla, en orden.
+     */
+    public static SongCursor of(SongTable table) {
+        return new SongCursor(table, table.size(), table::id, null);
+    }
+
+    /**
+     * Crea un recorrido por las canciones con los IDs de un conjunto, en orden.
+     * Los IDs que ya no estan en la tabla se muestran como vacios.
+     */
+    public static SongCursor of(SongTable table, IdBitmap ids) {
+        return new SongCursor(table, ids.cardinality(), ids::select, ids);
+    }
+
+    /**
+     * Crea un recorrido por una lista de canciones de una tabla.
+     */
+    public static SongCursor of(SongTable table, List<Song> songs) {
+        return new SongCursor(table, songs.size(), position -> songs.get(position).getId(), null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Obtiene la tabla de la que se leen las canciones.
+     */
+    public SongTable table() {
+        return table;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Obtiene los IDs de todas las canciones, en orden, sin construirlas.
+     */
+    public int[] ids() {
+        if (bitmap != null) {
+            return bitmap.toArray();
+        }
+
+        int[] result = new int[size];
+        Arrays.setAll(result, ids);
+        return result;
+    }
+
+    /**
+     * Obtiene el numero de paginas, al menos 1.
+     */
+    public int pages() {
+        return Math.max(1, (size + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * Obtiene la pagina actual, desde 0.
+     */
+    public int page() {
+        return page;
+    }
+
+    /**
+     * Obtiene la posicion de la primera cancion de la pagina actual.
+     */
+    public int first() {
+        return page * PAGE_SIZE;
+    }
+
+    /**
+     * Construye las canciones de la pagina actual.
+     */
+    public List<Song> current() {
+        List<Song> result = new ArrayList<>(PAGE_SIZE);
+
+        for (int i = first(); i < Math.min(size, first() + PAGE_SIZE); i++) {
+            result.add(song(i));
+        }
+
+        return result;
+    }
+
+    /**
+     * Avanza a la siguiente pagina.
+     *
+     * @return {@code false} si ya estaba en la ultima.
+     */
+    public boolean next() {
+        return jump(page + 1);
+    }
+
+    /**
+     * Retrocede a la pagina anterior.
+     *
+     * @return {@code false} si ya estaba en la primera.
+     */
+    public boolean previous() {
+        return jump(page - 1);
+    }
+
+    /**
+     * Cambia a una pagina.
+     *
+     * @param page Pagina, desde 0.
+     * @return {@code false} si la pagina no existe.
+     */
+    public boolean jump(int page) {
+        if (page < 0 || page >= pages()) {
+            return false;
+        }
+
+        this.page = page;
+        return true;
+    }
+
+    /**
+     * Muestra las canciones pagina por pagina, hasta que el usuario termine.
+     */
+    public void browse(InteractiveScanner scanner) {
+        int option;
+
+        do {
+            StringBuilder builder = new StringBuilder(PAGE_SIZE * 256);
+
+            for (Song song : current()) {
+                builder.append(song).append('\n');
+            }
+
+            System.out.print(builder);
+
+            if (pages() == 1) {
+                return;
+            }
+
+            option = navigate(scanner);
+        } while (option != 0);
+    }
+
+    /**
+     * Muestra las canciones pagina por pagina para que el usuario seleccione
+     * una por su numero. Con mas de una pagina, el 0 permite cambiar de pagina.
+     *
+     * @return La cancion seleccionada.
+     */
+    public Song choose(InteractiveScanner scanner) {
+        do {
+            System.out.println("Selecciona una cancion:");
+            System.out.print(lines());
+
+            if (pages() > 1) {
+                System.out.println("Pagina %d de %d. Ingrese 0 para cambiar de pagina.".formatted(this.page + 1, pages()));
+            }
+
+            int option = scanner.nextInt("Opcion");
+
+            if (option == 0 && pages() > 1) {
+                navigate(scanner);
+            } else if (option < 1 || option > size) {
+                System.out.println("Opcion invalida");
+            } else {
+                return song(option - 1);
+            }
+        } while (true);
+    }
+
+    /**
+     * Muestra la pagina actual con el numero de cada cancion para que el
+     * usuario ingrese uno. Con mas de una pagina tambien acepta "s" y "a" para
+     * pasar a la pagina siguiente o a la anterior, y vuelve a mostrarla.
+     *
+     * El numero no se valida: se regresa tal cual, para que cada menu responda
+     * a una opcion invalida como lo hacia con el listado completo.
+     *
+     * @param message Mensaje a desplegar al usuario.
+     * @return El numero ingresado, desde 1 para la primera cancion.
+     */
+    public int select(InteractiveScanner scanner, String message) {
+        while (true) {
+            System.out.print(lines());
+            System.out.println("-".repeat(80));
+
+            if (pages() == 1) {
+                return scanner.nextInt(message);
+            }
+
+            System.out.println("Pagina %d de %d. Ingrese s (siguiente), a (anterior) o el numero de la cancion."
+                    .formatted(page + 1, pages()));
+
+            String value = scanner.nextLine(message, 11).toLowerCase();
+
+            if (value.equals("s")) {
+                if (!next()) {
+                    System.out.println("Informacion: Es la ultima pagina.");
+                }
+            } else if (value.equals("a")) {
+                if (!previous()) {
+                    System.out.println("Informacion: Es la primera pagina.");
+                }
+            } else {
+                try {
+                    return Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    System.out.println("Error: Debe proporcionar un numero, 's' o 'a'.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Arma las lineas "numero. Artista - Titulo" de la pagina actual, para
+     * escribirlas de una vez.
+     */
+    private StringBuilder lines() {
+        StringBuilder builder = new StringBuilder(PAGE_SIZE * 64);
+        int end = Math.min(size, first() + PAGE_SIZE);
+
+        for (int i = first(); i < end; i++) {
+            Song song = song(i);
+            builder.append(i + 1).append(". ").append(song.getArtist()).append(" - ").append(song.getTitle())
+                    .append('\n');
+        }
+
+        return builder;
+    }
+
+    private Song song(int position) {
+        int index = table.indexOfId(ids.applyAsInt(position));
+        return index >= 0 ? table.view(index) : new Song();
+    }
+
+    /**
+     * Despliega el menu para cambiar de pagina.
+     *
+     * @return La opcion elegida, 0 para terminar.
+     */
+    private int navigate(InteractiveScanner scanner) {
+        System.out.println("-".repeat(80));
+        System.out.println("Pagina %d de %d (%d canciones)".formatted(page + 1, pages(), size));
+        System.out.println("""
+                1. Siguiente
+                2. Anterior
+                3. Ir a pagina
+                0. Salir""");
+
+        int option = scanner.nextInt("Opcion");
+
+        switch (option) {
+            case 1 -> {
+                if (!next()) {
+                    System.out.println("Informacion: Es la ultima pagina.");
+                }
+            }
+
+            case 2 -> {
+                if (!previous()) {
+                    System.out.println("Informacion: Es la primera pagina.");
+                }
+            }
+
+            case 3 -> {
+                if (!jump(scanner.nextInt("Pagina") - 1)) {
+                    System.out.println("Error: La pagina no existe.");
+                }
+            }
+
+            case 0 -> {
+            }
+
+            default -> System.out.println("Opcion invalida");
+        }
+
+        System.out.println("-".repeat(80));
+        return option;
+    }
+}
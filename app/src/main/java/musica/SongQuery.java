@@ -0,0 +1,414 @@
+package musica;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.function.IntPredicate;
+
+/**
+ * Busqueda de canciones que combina varios criterios, todos los cuales deben
+ * cumplirse, como "genero Rock, lanzadas entre 1990 y 1999 y de menos de 4
+ * minutos".
+ *
+ * Cada criterio se responde con el {@link SearchIndex} de la tabla como un
+ * {@link IdBitmap}, y los conjuntos se intersectan empezando por el mas
+ * pequeno; solo se construyen las canciones del resultado final. Los criterios
+ * que el indice no puede responder, como un titulo mas corto que
+ * {@link NGramIndex#N}, o todos si la tabla aun no tiene indice, se revisan
+ * cancion por cancion sobre las columnas de la tabla.
+ *
+ * Si la tabla tiene un {@link QueryCache}, los resultados se guardan en el por
+ * la llave normalizada de la busqueda, que no depende del orden de los
+ * criterios.
+ */
+public class SongQuery {
+
+    /**
+     * Resultados que devuelve como maximo una busqueda aproximada.
+     */
+    public static final int SIMILAR_LIMIT = 10;
+
+    /**
+     * Criterio de una busqueda.
+     */
+    private abstract static class Criterion {
+
+        /**
+         * Campos de {@link QueryCache} de los que depende el criterio.
+         */
+        final int fields;
+
+        /**
+         * Texto normalizado que identifica al criterio.
+         */
+        final String key;
+
+        Criterion(int fields, String key) {
+            this.fields = fields;
+            this.key = key;
+        }
+
+        /**
+         * Obtiene las canciones que cumplen con el criterio.
+         *
+         * @param index Indice de la tabla, o {@code null} si no tiene.
+         * @return Los IDs de las canciones, o {@code null} si hay que revisar
+         *         cada cancion con {@link #test}.
+         */
+        abstract IdBitmap ids(SongTable songs, SearchIndex index);
+
+        /**
+         * Revisa si la cancion en una posicion cumple con el criterio.
+         */
+        abstract boolean test(SongTable songs, int index);
+    }
+
+    private final List<Criterion> criteria = new ArrayList<>();
+
+    /**
+     * Agrega el criterio de contener un texto en una columna, sin distinguir
+     * mayusculas.
+     *
+     * @param column Columna ({@link CatalogFile#TITLE}, {@link CatalogFile#ARTIST}
+     *               o {@link CatalogFile#AUTHOR}).
+     * @param text   Texto a buscar.
+     * @return Esta busqueda.
+     */
+    public SongQuery containing(int column, String text) {
+        String query = SearchIndex.normalize(text);
+
+        criteria.add(new Criterion(1 << column, column + "~" + query) {
+            @Override
+            IdBitmap ids(SongTable songs, SearchIndex index) {
+                return index != null ? index.containing(songs, column, query) : null;
+            }
+
+            @Override
+            boolean test(SongTable songs, int index) {
+                return songs.key(column, index).contains(query);
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Agrega el criterio de ser de un genero, sin distinguir mayusculas.
+     *
+     * @param genre Genero.
+     * @return Esta busqueda.
+     */
+    public SongQuery genre(String genre) {
+        String query = SearchIndex.normalize(genre);
+
+        criteria.add(new Criterion(QueryCache.GENRE, "genero=" + query) {
+            @Override
+            IdBitmap ids(SongTable songs, SearchIndex index) {
+                return index != null ? index.withGenre(query) : null;
+            }
+
+            @Override
+            boolean test(SongTable songs, int index) {
+                return StringPool.CATALOG.key(songs.genreCode(index)).equals(query);
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Agrega el criterio de haber sido lanzada entre dos fechas, incluidas. Las
+     * canciones sin fecha no lo cumplen.
+     *
+     * @param from Primera fecha, en dias desde 1970-01-01.
+     * @param to   Ultima fecha, en dias desde 1970-01-01.
+     * @return Esta busqueda.
+     */
+    public SongQuery releasedBetween(int from, int to) {
+        criteria.add(new Criterion(QueryCache.DATE, "fecha:" + from + ".." + to) {
+            @Override
+            IdBitmap ids(SongTable songs, SearchIndex index) {
+                return index != null ? index.releasedBetween(from, to) : null;
+            }
+
+            @Override
+            boolean test(SongTable songs, int index) {
+                int epochDay = songs.epochDay(index);
+                return epochDay != CatalogFile.NO_DATE && epochDay >= from && epochDay <= to;
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Agrega el criterio de durar entre dos duraciones, incluidas.
+     *
+     * @param from Duracion minima, en segundos.
+     * @param to   Duracion maxima, en segundos.
+     * @return Esta busqueda.
+     */
+    public SongQuery lastingBetween(int from, int to) {
+        criteria.add(new Criterion(QueryCache.LENGTH, "duracion:" + from + ".." + to) {
+            @Override
+            IdBitmap ids(SongTable songs, SearchIndex index) {
+                return index != null ? index.lastingBetween(from, to) : null;
+            }
+
+            @Override
+            boolean test(SongTable songs, int index) {
+                return songs.lengthSeconds(index) >= from && songs.lengthSeconds(index) <= to;
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Agrega el criterio de tener la duracion mas cercana a otra, entre todas
+     * las canciones del catalogo. Si hay dos duraciones igual de cercanas, ambas
+     * lo cumplen.
+     *
+     * @param length Duracion en segundos.
+     * @return Esta busqueda.
+     */
+    public SongQuery nearestLength(int length) {
+        criteria.add(new Criterion(QueryCache.LENGTH | QueryCache.ROWS, "duracion~" + length) {
+            @Override
+            IdBitmap ids(SongTable songs, SearchIndex index) {
+                if (index != null) {
+                    return index.nearestLength(length);
+                }
+
+                long best = Long.MAX_VALUE;
+
+                for (int i = 0; i < songs.size(); i++) {
+                    best = Math.min(best, Math.abs((long) songs.lengthSeconds(i) - length));
+                }
+
+                long distance = best;
+                return scan(songs, i -> Math.abs((long) songs.lengthSeconds(i) - length) == distance);
+            }
+
+            @Override
+            boolean test(SongTable songs, int index) {
+                // No se usa: ids siempre responde, con o sin indice, y el
+                // cache descarta estas busquedas con cualquier cancion nueva.
+                throw new IllegalStateException();
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Agrega el criterio de tener un tamano entre dos tamanos, incluidos. Para
+     * las canciones que caben en el espacio libre de un disco, el rango va de 0
+     * a ese espacio.
+     *
+     * @param from Tamano minimo, en KB.
+     * @param to   Tamano maximo, en KB.
+     * @return Esta busqueda.
+     */
+    public SongQuery sizedBetween(int from, int to) {
+        criteria.add(new Criterion(QueryCache.SIZE, "tamano:" + from + ".." + to) {
+            @Override
+            IdBitmap ids(SongTable songs, SearchIndex index) {
+                return index != null ? index.sizedBetween(from, to) : null;
+            }
+
+            @Override
+            boolean test(SongTable songs, int index) {
+                return songs.size(index) >= from && songs.size(index) <= to;
+            }
+        });
+
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return criteria.isEmpty();
+    }
+
+    /**
+     * Obtiene la llave normalizada de la busqueda, la misma para los mismos
+     * criterios en cualquier orden.
+     */
+    public String key() {
+        return criteria.stream().map(criterion -> criterion.key).sorted().collect(Collectors.joining(" & "));
+    }
+
+    /**
+     * Obtiene los campos de {@link QueryCache} de los que depende la busqueda.
+     */
+    public int fields() {
+        int fields = 0;
+
+        for (Criterion criterion : criteria) {
+            fields |= criterion.fields;
+        }
+
+        return fields;
+    }
+
+    /**
+     * Revisa si la cancion en una posicion cumple con todos los criterios. No
+     * se puede usar con busquedas que dependen de todo el catalogo
+     * ({@link QueryCache#ROWS}).
+     */
+    public boolean matches(SongTable songs, int index) {
+        return criteria.stream().allMatch(criterion -> criterion.test(songs, index));
+    }
+
+    /**
+     * Obtiene los IDs de las canciones que cumplen con todos los criterios.
+     *
+     * @param songs Catalogo en el que se busca.
+     * @return Los IDs de las canciones, que no deben modificarse.
+     */
+    public IdBitmap ids(SongTable songs) {
+        QueryCache cache = songs.cache();
+        IdBitmap result = cache != null ? cache.get(this) : null;
+
+        if (result == null) {
+            result = compute(songs);
+
+            if (cache != null) {
+                cache.put(this, result);
+            }
+        }
+
+        return result;
+    }
+
+    private IdBitmap compute(SongTable songs) {
+        SearchIndex index = songs.index();
+        List<IdBitmap> sets = new ArrayList<>();
+        List<Criterion> remaining = new ArrayList<>();
+
+        for (Criterion criterion : criteria) {
+            IdBitmap ids = criterion.ids(songs, index);
+
+            if (ids == null) {
+                remaining.add(criterion);
+            } else if (ids.isEmpty()) {
+                return ids;
+            } else {
+                sets.add(ids);
+            }
+        }
+
+        if (sets.isEmpty()) {
+            return scan(songs, i -> remaining.stream().allMatch(criterion -> criterion.test(songs, i)));
+        }
+
+        sets.sort(Comparator.comparingInt(IdBitmap::cardinality));
+        IdBitmap result = sets.get(0);
+
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+            result = result.and(sets.get(i));
+        }
+
+        if (remaining.isEmpty()) {
+            return result;
+        }
+
+        IdBitmap filtered = new IdBitmap();
+
+        result.forEach(id -> {
+            int position = songs.indexOfId(id);
+
+            if (position >= 0 && remaining.stream().allMatch(criterion -> criterion.test(songs, position))) {
+                filtered.add(id);
+            }
+        });
+
+        return filtered;
+    }
+
+    /**
+     * Obtiene un recorrido por paginas de las canciones que cumplen con todos
+     * los criterios, que solo construye las de la pagina que se muestra.
+     * El recorrido lee una copia del catalogo, por lo que puede usarse despues
+     * de {@link Catalog#read}.
+     *
+     * @param songs Catalogo en el que se busca.
+     */
+    public SongCursor cursor(SongTable songs) {
+        return SongCursor.of(songs.snapshot(), ids(songs));
+    }
+
+    /**
+     * Busca las canciones que cumplen con todos los criterios.
+     *
+     * @param songs Catalogo en el que se busca.
+     * @return Las canciones, en orden.
+     */
+    public List<Song> run(SongTable songs) {
+        return songs.select(ids(songs));
+    }
+
+    /**
+     * Busca las canciones cuyo texto en una columna se parece a otro, con
+     * algunos errores de escritura, entre las que cumplen con todos los
+     * criterios.
+     *
+     * Con indice se usa {@link SearchIndex#similar}, que solo compara los
+     * textos que comparten n-gramas con la consulta; sin indice, como durante
+     * la carga, se compara cada cancion con la misma tolerancia.
+     *
+     * @param songs  Catalogo en el que se busca.
+     * @param column Columna ({@link CatalogFile#TITLE}, {@link CatalogFile#ARTIST}
+     *               o {@link CatalogFile#AUTHOR}).
+     * @param text   Texto a buscar.
+     * @param limit  Resultados que se devuelven como maximo.
+     * @return Las canciones mas parecidas primero.
+     */
+    public List<Song> similar(SongTable songs, int column, String text, int limit) {
+        String query = SearchIndex.normalize(text);
+        SearchIndex index = songs.index();
+        List<SearchIndex.Match> matches = index != null ? index.similar(songs, column, query) : null;
+
+        if (matches == null) {
+            int max = EditDistance.tolerance(query.length());
+            matches = new ArrayList<>();
+
+            for (int i : ParallelScan.positions(songs.size(),
+                    i -> EditDistance.within(query, songs.key(column, i), max) <= max)) {
+                String value = songs.key(column, i);
+                matches.add(new SearchIndex.Match(songs.id(i), EditDistance.within(query, value, max),
+                        Math.abs(value.length() - query.length())));
+            }
+
+            matches.sort(SearchIndex.Match.RANKING);
+        }
+
+        IdBitmap allowed = isEmpty() ? null : ids(songs);
+        List<Song> result = new ArrayList<>();
+
+        for (int i = 0; i < matches.size() && result.size() < limit; i++) {
+            int id = matches.get(i).id();
+            int position = songs.indexOfId(id);
+
+            if (position >= 0 && (allowed == null || allowed.contains(id))) {
+                result.add(songs.get(position));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Revisa todas las canciones de la tabla con {@link ParallelScan}.
+     */
+    private static IdBitmap scan(SongTable songs, IntPredicate predicate) {
+        IdBitmap result = new IdBitmap();
+
+        for (int position : ParallelScan.positions(songs.size(), predicate)) {
+            result.add(songs.id(position));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,483 @@
+package musica;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Lista de canciones del catalogo sobre un {@link CatalogFile}.
+ *
+ * Las canciones del archivo solo se construyen como {@link Song} cuando se
+ * obtienen con {@link #get(int)}, para mostrarlas o modificarlas, y a partir de
+ * ese momento se conservan. Las busquedas y listados pueden leer cada atributo
+ * directamente de las columnas del archivo con {@link #title(int)},
+ * {@link #artist(int)}, etc., sin construir la cancion.
+ *
+ * Cada cancion ocupa una fila fija: las del archivo conservan su fila original
+ * y las agregadas reciben una nueva al final. Mientras no se borre, la posicion
+ * en la lista es la misma que la fila; despues de eso se guarda la fila de cada
+ * posicion en un arreglo.
+ *
+ * Al agregarse, cada cancion recibe un ID mayor a todos los anteriores. Como
+ * las canciones solo se agregan al final, los IDs quedan ordenados y la
+ * posicion de un ID se encuentra con una busqueda binaria sobre la columna de
+ * IDs, sin construir ningun indice al abrir el catalogo.
+ *
+ * Una vez construido con {@link #buildIndex()}, la tabla mantiene un
+ * {@link SearchIndex} y un {@link QueryCache} al agregar, reemplazar o borrar
+ * canciones. Las copias
+ * hechas con {@link #snapshot()} no lo tienen y sus busquedas revisan todas las
+ * canciones.
+ *
+ * Varios hilos pueden leer la tabla a la vez, incluso construyendo canciones
+ * con {@link #get(int)}, pero no mientras otro la modifica; {@link Catalog}
+ * se encarga de que no coincidan.
+ */
+public class SongTable extends AbstractList<Song> implements RandomAccess {
+
+    private final CatalogFile file;
+    private final int fileRows;
+    private final ConcurrentHashMap<Integer, Song> materialized;
+    private final ArrayList<Song> appended;
+    private final String[] titleKeys;
+    private int[] rows;
+    private int size;
+    private int nextId;
+    private SearchIndex search;
+    private QueryCache cache;
+
+    public SongTable() {
+        this((CatalogFile) null);
+    }
+
+    public SongTable(CatalogFile file) {
+        this.file = file;
+        this.fileRows = file != null ? file.rows() : 0;
+        this.materialized = new ConcurrentHashMap<>();
+        this.appended = new ArrayList<>();
+        this.titleKeys = new String[fileRows];
+        this.size = fileRows;
+        this.nextId = file != null ? file.nextId() : 1;
+    }
+
+    public SongTable(Collection<Song> songs) {
+        this((CatalogFile) null);
+
+        for (Song song : songs) {
+            add(song);
+        }
+    }
+
+    private SongTable(SongTable other) {
+        this.file = other.file;
+        this.fileRows = other.fileRows;
+
+        this.materialized = new ConcurrentHashMap<>(other.materialized);
+
+        this.appended = new ArrayList<>(other.appended);
+        this.titleKeys = other.titleKeys;
+        this.rows = other.rows != null ? Arrays.copyOf(other.rows, other.size) : null;
+        this.size = other.size;
+        this.nextId = other.nextId;
+    }
+
+    /**
+     * Crea una copia de la lista en su estado actual. Las canciones se comparten,
+     * pero los cambios posteriores a la lista no afectan a la copia. Puede
+     * llamarse desde otro hilo mientras se construyen canciones, pero no mientras
+     * se agregan o borran.
+     *
+     * @return La copia de la lista.
+     */
+    public SongTable snapshot() {
+        return new SongTable(this);
+    }
+
+    CatalogFile file() {
+        return file;
+    }
+
+    /**
+     * Construye el indice de busqueda sobre las canciones actuales, y el cache
+     * de los resultados de las busquedas.
+     */
+    public void buildIndex() {
+        buildIndex(new QueryCache());
+    }
+
+    /**
+     * Construye el indice de busqueda sobre las canciones actuales, con un cache
+     * que puede compartir con otra tabla que reciba los mismos cambios, como
+     * las dos copias de un {@link Catalog}.
+     */
+    public void buildIndex(QueryCache cache) {
+        search = SearchIndex.build(this);
+        this.cache = cache;
+    }
+
+    /**
+     * Obtiene el indice de busqueda.
+     *
+     * @return El indice, o {@code null} si no se ha construido.
+     */
+    public SearchIndex index() {
+        return search;
+    }
+
+    /**
+     * Obtiene el cache de las busquedas.
+     *
+     * @return El cache, o {@code null} si no se ha construido el indice.
+     */
+    public QueryCache cache() {
+        return cache;
+    }
+
+    /**
+     * Obtiene la fila de la cancion en una posicion.
+     */
+    int row(int index) {
+        Objects.checkIndex(index, size);
+        return rows != null ? rows[index] : index;
+    }
+
+    /**
+     * Obtiene la cancion en una posicion solo si ya fue construida.
+     *
+     * @return La cancion, o {@code null} si aun solo existe en el archivo.
+     */
+    Song cached(int index) {
+        int row = row(index);
+        return row < fileRows ? materialized.get(row) : appended.get(row - fileRows);
+    }
+
+    @Override
+    public Song get(int index) {
+        int row = row(index);
+
+        if (row >= fileRows) {
+            return appended.get(row - fileRows);
+        }
+
+        return materialized.computeIfAbsent(row, file::song);
+    }
+
+    /**
+     * Obtiene la cancion en una posicion para mostrarla. Si aun no se habia
+     * construido, se construye una copia desde el archivo que no se conserva,
+     * por lo que no debe modificarse.
+     */
+    public Song view(int index) {
+        Song song = cached(index);
+        return song != null ? song : file.song(row(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reemplaza la cancion en una posicion. La nueva cancion conserva el ID de la
+     * anterior.
+     */
+    @Override
+    public Song set(int index, Song song) {
+        Song previous = get(index);
+        int row = row(index);
+        song.setId(previous.getId());
+
+        if (search != null) {
+            search.remove(this, index);
+        }
+
+        if (row < fileRows) {
+            materialized.put(row, song);
+        } else {
+            appended.set(row - fileRows, song);
+        }
+
+        if (search != null) {
+            search.add(this, index);
+            cache.updated(QueryCache.fields(previous, song));
+        }
+
+        return previous;
+    }
+
+    /**
+     * Agrega una cancion al final del catalogo y le asigna un nuevo ID.
+     *
+     * @throws IllegalArgumentException Si {@code index} no es el final de la
+     *                                  lista, ya que los IDs dejarian de estar
+     *                                  ordenados.
+     */
+    @Override
+    public void add(int index, Song song) {
+        if (index != size) {
+            throw new IllegalArgumentException("Las canciones solo se agregan al final del catalogo.");
+        }
+
+        int row = fileRows + appended.size();
+        song.setId(nextId++);
+        appended.add(song);
+
+        if (rows != null) {
+            ensureRows(size + 1);
+            rows[size] = row;
+        }
+
+        size++;
+        modCount++;
+
+        if (search != null) {
+            search.add(this, index);
+            cache.added(this, index);
+        }
+    }
+
+    @Override
+    public Song remove(int index) {
+        Song previous = get(index);
+
+        if (search != null) {
+            search.remove(this, index);
+            cache.removed(previous.getId());
+        }
+
+        ensureRows(size);
+        System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+        size--;
+        modCount++;
+
+        return previous;
+    }
+
+    private void ensureRows(int capacity) {
+        if (rows == null) {
+            rows = new int[Math.max(capacity, 16)];
+
+            for (int i = 0; i < size; i++) {
+                rows[i] = i;
+            }
+        } else if (rows.length < capacity) {
+            rows = Arrays.copyOf(rows, Math.max(capacity, rows.length + (rows.length >> 1)));
+        }
+    }
+
+    /**
+     * Obtiene el ID que recibira la siguiente cancion agregada.
+     */
+    public int nextId() {
+        return nextId;
+    }
+
+    /**
+     * Obtiene el ID de la cancion en una posicion.
+     */
+    public int id(int index) {
+        Song song = cached(index);
+        return song != null ? song.getId() : file.id(row(index));
+    }
+
+    /**
+     * Busca la posicion de una cancion por su ID.
+     *
+     * @param id ID de la cancion.
+     * @return La posicion de la cancion, o -1 si no esta en el catalogo.
+     */
+    public int indexOfId(int id) {
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = id(middle);
+
+            if (value < id) {
+                low = middle + 1;
+            } else if (value > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Obtiene una cancion por su ID.
+     *
+     * @param id ID de la cancion.
+     * @return La cancion, o {@code null} si no esta en el catalogo.
+     */
+    public Song byId(int id) {
+        int index = indexOfId(id);
+        return index >= 0 ? get(index) : null;
+    }
+
+    /**
+     * Busca la posicion de una cancion del catalogo por su ID.
+     */
+    @Override
+    public int indexOf(Object song) {
+        return song instanceof Song value ? indexOfId(value.getId()) : -1;
+    }
+
+    private String string(int column, int index) {
+        Song song = cached(index);
+        return song != null ? CatalogFile.string(song, column) : file.string(column, row(index));
+    }
+
+    public String title(int index) {
+        return string(CatalogFile.TITLE, index);
+    }
+
+    public String artist(int index) {
+        return string(CatalogFile.ARTIST, index);
+    }
+
+    public String author(int index) {
+        return string(CatalogFile.AUTHOR, index);
+    }
+
+    public String genre(int index) {
+        return string(CatalogFile.GENRE, index);
+    }
+
+    /**
+     * Obtiene la llave de busqueda del titulo, normalizada con
+     * {@link SearchIndex#normalize(String)}.
+     *
+     * Las llaves de las filas del archivo se calculan la primera vez que se
+     * piden y se guardan por fila; como el texto de una fila no cambia, varios
+     * hilos pueden calcularla a la vez sin problema. Las canciones construidas
+     * guardan la suya.
+     */
+    public String titleKey(int index) {
+        Song song = cached(index);
+
+        if (song != null) {
+            return song.getTitleKey();
+        }
+
+        int row = row(index);
+        String key = titleKeys[row];
+
+        if (key == null) {
+            key = SearchIndex.normalize(file.string(CatalogFile.TITLE, row));
+            titleKeys[row] = key;
+        }
+
+        return key;
+    }
+
+    /**
+     * Obtiene la llave de busqueda del texto de una columna.
+     *
+     * @param column Columna de texto ({@link CatalogFile#TITLE},
+     *               {@link CatalogFile#ARTIST}, {@link CatalogFile#AUTHOR} o
+     *               {@link CatalogFile#GENRE}).
+     */
+    public String key(int column, int index) {
+        return column == CatalogFile.TITLE ? titleKey(index) : StringPool.CATALOG.key(code(column, index));
+    }
+
+    int code(int column, int index) {
+        Song song = cached(index);
+        return song != null ? CatalogFile.code(song, column) : file.code(column, row(index));
+    }
+
+    /**
+     * Obtiene el codigo del artista en {@link StringPool#CATALOG}.
+     */
+    public int artistCode(int index) {
+        return code(CatalogFile.ARTIST, index);
+    }
+
+    /**
+     * Obtiene el codigo del autor en {@link StringPool#CATALOG}.
+     */
+    public int authorCode(int index) {
+        return code(CatalogFile.AUTHOR, index);
+    }
+
+    /**
+     * Obtiene el codigo del genero en {@link StringPool#CATALOG}.
+     */
+    public int genreCode(int index) {
+        return code(CatalogFile.GENRE, index);
+    }
+
+    /**
+     * Obtiene la duracion de la cancion en segundos.
+     */
+    public int lengthSeconds(int index) {
+        Song song = cached(index);
+        return song != null ? CatalogFile.lengthSeconds(song) : file.lengthSeconds(row(index));
+    }
+
+    /**
+     * Obtiene la fecha de lanzamiento en dias desde 1970-01-01, o
+     * {@link CatalogFile#NO_DATE} si no tiene.
+     */
+    public int epochDay(int index) {
+        Song song = cached(index);
+        return song != null ? CatalogFile.epochDay(song) : file.epochDay(row(index));
+    }
+
+    /**
+     * Obtiene el tamano de la cancion en KB.
+     */
+    public int size(int index) {
+        Song song = cached(index);
+        return song != null ? song.getSize() : file.size(row(index));
+    }
+
+    /**
+     * Construye unicamente las canciones con los IDs de un conjunto, como el
+     * resultado de un {@link SongQuery}.
+     *
+     * @param ids IDs de las canciones.
+     * @return Las canciones que siguen en el catalogo, en orden.
+     */
+    public List<Song> select(IdBitmap ids) {
+        List<Song> result = new ArrayList<>(ids.cardinality());
+
+        ids.forEach(id -> {
+            int index = indexOfId(id);
+
+            if (index >= 0) {
+                result.add(get(index));
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Construye unicamente las canciones cuya posicion cumple con el filtro.
+     * Las posiciones se revisan con {@link ParallelScan}.
+     *
+     * @param predicate Filtro sobre la posicion de cada cancion, que solo debe
+     *                  leer la tabla.
+     * @return Las canciones que cumplen con el filtro, en orden.
+     */
+    public List<Song> select(IntPredicate predicate) {
+        int[] positions = ParallelScan.positions(size, predicate);
+        List<Song> result = new ArrayList<>(positions.length);
+
+        for (int position : positions) {
+            result.add(get(position));
+        }
+
+        return result;
+    }
+}
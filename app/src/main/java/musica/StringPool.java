@@ -0,0 +1,96 @@
+package musica;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Diccionario de textos repetidos, como el artista, el autor y el genero de
+ * las canciones.
+ *
+ * Cada texto distinto se guarda una sola vez y recibe un codigo entero, que es
+ * lo que guardan las canciones. Los codigos se asignan en orden desde 0 y no
+ * cambian mientras la aplicacion este abierta; {@code null} se representa con
+ * el codigo -1.
+ *
+ * La aplicacion maneja un unico catalogo, por lo que todas sus canciones
+ * comparten el diccionario {@link #CATALOG}.
+ *
+ * Junto con cada texto se guarda su llave de busqueda, normalizada con
+ * {@link SearchIndex#normalize(String)} una sola vez al agregarlo.
+ *
+ * Los textos se leen sin bloquear, para que los recorridos en paralelo de
+ * {@link ParallelScan} no compitan por el diccionario: cada texto se escribe
+ * antes de volver a publicar el arreglo, y un texto nunca cambia de codigo.
+ */
+public class StringPool {
+
+    /**
+     * Diccionario de las canciones del catalogo.
+     */
+    public static final StringPool CATALOG = new StringPool();
+
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private volatile String[] values = new String[64];
+    private volatile String[] keys = new String[64];
+    private int size;
+
+    /**
+     * Obtiene el codigo de un texto, agregandolo al diccionario si no estaba.
+     *
+     * @param value El texto.
+     * @return Su codigo, o -1 si {@code value} es {@code null}.
+     */
+    public synchronized int code(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        Integer code = codes.get(value);
+
+        if (code == null) {
+            String[] current = values;
+            String[] currentKeys = keys;
+
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+                currentKeys = Arrays.copyOf(currentKeys, size * 2);
+            }
+
+            code = size;
+            current[size] = value;
+            currentKeys[size++] = SearchIndex.normalize(value);
+            values = current;
+            keys = currentKeys;
+            codes.put(value, code);
+        }
+
+        return code;
+    }
+
+    /**
+     * Obtiene el texto de un codigo.
+     *
+     * @param code Codigo obtenido con {@link #code(String)}.
+     * @return El texto, o {@code null} si el codigo es -1.
+     */
+    public String get(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    /**
+     * Obtiene la llave de busqueda del texto de un codigo.
+     *
+     * @param code Codigo obtenido con {@link #code(String)}.
+     * @return El texto normalizado, o vacio si el codigo es -1.
+     */
+    public String key(int code) {
+        return code < 0 ? "" : keys[code];
+    }
+
+    /**
+     * Obtiene el numero de textos en el diccionario.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
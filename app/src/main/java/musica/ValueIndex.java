@@ -0,0 +1,58 @@
+package musica;
+
+import java.util.Arrays;
+
+/**
+ * Indice de las canciones por el codigo de {@link StringPool} de una columna,
+ * como el artista o el genero.
+ */
+public class ValueIndex {
+
+    private IdList[] ids = new IdList[64];
+
+    /**
+     * Agrega una cancion con un codigo.
+     */
+    public void add(int code, int id) {
+        if (code < 0) {
+            return;
+        }
+
+        if (code >= ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(code + 1, ids.length * 2));
+        }
+
+        if (ids[code] == null) {
+            ids[code] = new IdList();
+        }
+
+        ids[code].add(id);
+    }
+
+    /**
+     * Quita una cancion con un codigo.
+     */
+    public void remove(int code, int id) {
+        if (code >= 0 && code < ids.length && ids[code] != null) {
+            ids[code].remove(id);
+        }
+    }
+
+    /**
+     * Obtiene las canciones con un codigo.
+     *
+     * @return Los IDs, que no deben modificarse, o {@code null} si no hay
+     *         ninguna.
+     */
+    public IdList get(int code) {
+        IdList result = code >= 0 && code < ids.length ? ids[code] : null;
+        return result == null || result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Obtiene el mayor codigo mas uno que puede tener canciones.
+     */
+    public int limit() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,152 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CatalogFileTest {
+
+    private static final LocalDate DATE = LocalDate.of(1991, 1, 1);
+
+    @TempDir
+    Path dir;
+
+    private static Song song(String title, String artist, String author, String genre, int length,
+            LocalDate date, int size) {
+        Song song = new Song();
+        song.setTitle(title);
+        song.setArtist(artist);
+        song.setAuthor(author);
+        song.setGenre(genre);
+        song.setLength(length);
+        song.setReleaseDate(date);
+        song.setSize(size);
+
+        return song;
+    }
+
+    private static void assertSong(Song expected, Song actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getAuthor(), actual.getAuthor());
+        assertEquals(expected.getGenre(), actual.getGenre());
+        assertEquals(expected.getLength(), actual.getLength());
+        assertEquals(expected.getReleaseDate(), actual.getReleaseDate());
+        assertEquals(expected.getSize(), actual.getSize());
+    }
+
+    @Test
+    void writesAndReopensTheCurrentVersion() throws IOException {
+        SongTable songs = new SongTable(List.of(
+                song("Uno", "Abba", "Benny", "Pop", 200, DATE, 3_400),
+                song("Canción 🎵", "Queen", "Mercury", "Rock", 300, null, 5_000),
+                song("Tres", "Abba", "Björn", "Pop", 61, DATE.plusDays(1), 1_017)));
+        Playlist playlist = new Playlist("Mix");
+        playlist.addSong(songs.get(0));
+        playlist.addSong(songs.get(2));
+
+        Path path = dir.resolve("respaldo.arr");
+        CatalogFile.write(path, 42, songs, List.of(playlist));
+        assertTrue(CatalogFile.matches(path));
+
+        CatalogFile file = CatalogFile.open(path);
+        assertEquals(path, file.path());
+        assertEquals(42, file.lsn());
+        assertEquals(3, file.rows());
+        assertEquals(4, file.nextId());
+        assertEquals(CatalogFile.NO_DATE, file.epochDay(1));
+
+        SongTable read = new SongTable(file);
+        for (int i = 0; i < songs.size(); i++) {
+            assertSong(songs.get(i), read.get(i));
+        }
+
+        List<Playlist> playlists = file.playlists();
+        assertEquals(1, playlists.size());
+        assertEquals("Mix", playlists.get(0).getId());
+        assertArrayEquals(new int[] { 1, 3 }, playlists.get(0).getSongIds());
+        assertEquals(4_417, playlists.get(0).getSize());
+    }
+
+    @Test
+    void rewritesAMappedCatalogWithItsChanges() throws IOException {
+        SongTable songs = new SongTable(List.of(
+                song("Uno", "Abba", "Benny", "Pop", 200, DATE, 3_400),
+                song("Dos", "Queen", "Mercury", "Rock", 300, null, 5_000),
+                song("Tres", "Abba", "Björn", "Pop", 61, DATE, 1_017)));
+        Path first = dir.resolve("respaldo.arr");
+        CatalogFile.write(first, 1, songs, List.of());
+
+        // Las filas sin cambios se copian del archivo; las demas, de las canciones.
+        SongTable mapped = new SongTable(CatalogFile.open(first));
+        Song changed = mapped.get(2).copy();
+        changed.setGenre("Jazz");
+        changed.setSize(2_000);
+        mapped.set(2, changed);
+        mapped.remove(0);
+        mapped.add(song("Cuatro", "Nuevo", "Nuevo", "Pop", 10, null, 83));
+
+        Path second = dir.resolve("respaldo.1.arr");
+        CatalogFile.write(second, 2, mapped, List.of());
+
+        CatalogFile file = CatalogFile.open(second);
+        SongTable read = new SongTable(file);
+        assertEquals(2, file.lsn());
+        assertEquals(5, file.nextId());
+        assertEquals(3, read.size());
+        assertSong(songs.get(1), read.get(0));
+        assertSong(changed, read.get(1));
+        assertEquals(4, read.get(2).getId());
+        assertEquals("Nuevo", read.get(2).getArtist());
+        assertEquals(2, read.indexOfId(4));
+        assertEquals(-1, read.indexOfId(1));
+    }
+
+    /**
+     * Escribe un catalogo de una cancion y devuelve los bytes del archivo.
+     */
+    private byte[] written() throws IOException {
+        Path path = dir.resolve("original.arr");
+        CatalogFile.write(path, 7, new SongTable(List.of(song("Uno", "Abba", "Benny", "Pop", 200, DATE, 3_400))),
+                List.of());
+
+        return Files.readAllBytes(path);
+    }
+
+    @Test
+    void rejectsOffsetsBeyondTwoGigabytes() throws IOException {
+        // La primera posicion del encabezado, despues del siguiente ID, es la de
+        // los IDs.
+        byte[] bytes = written();
+        ByteBuffer.wrap(bytes).putLong(4 + 4 + 8 + 4 + 4, 1L << 31);
+
+        Path path = dir.resolve("respaldo.arr");
+        Files.write(path, bytes);
+
+        IOException e = assertThrows(IOException.class, () -> CatalogFile.open(path));
+        assertTrue(e.getMessage().contains("2147483648"), e.getMessage());
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = dir.resolve("respaldo.arr");
+        Files.write(path, new byte[] { 1, 2 });
+        assertFalse(CatalogFile.matches(path));
+        assertThrows(IOException.class, () -> CatalogFile.open(path));
+
+        byte[] future = written();
+        ByteBuffer.wrap(future).putInt(4, 2);
+        Files.write(path, future);
+        assertTrue(CatalogFile.matches(path));
+        assertThrows(IOException.class, () -> CatalogFile.open(path));
+    }
+}
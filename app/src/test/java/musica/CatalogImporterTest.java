@@ -0,0 +1,96 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class CatalogImporterTest {
+
+    @Test
+    void splitsPlainCsv() {
+        assertArrayEquals(new String[] { "Uno", "3:20", "Abba", "Benny", "01/01/1991", "Pop" },
+                CatalogImporter.csvFields("Uno,3:20,Abba,Benny,01/01/1991,Pop"));
+        assertArrayEquals(new String[] { "", "", "" }, CatalogImporter.csvValues(",,"));
+    }
+
+    @Test
+    void readsQuotedCsvFields() {
+        assertArrayEquals(new String[] { "Uno, dos", "Di \"hola\"", "" },
+                CatalogImporter.csvValues("\"Uno, dos\",\"Di \"\"hola\"\"\",\"\""));
+    }
+
+    @Test
+    void rejectsBadCsv() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CatalogImporter.csvValues("\"Uno,3:20"));
+        assertEquals("Comillas sin cerrar.", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> CatalogImporter.csvFields("Uno,3:20,Abba"));
+        assertEquals("Se esperaban 6 columnas, pero hay 3.", e.getMessage());
+    }
+
+    @Test
+    void readsJsonObjects() {
+        assertEquals(Map.of(), CatalogImporter.jsonObject(" { } "));
+        assertEquals(Map.of("a", "1", "b", "x\"y\\z/\n\t\u00e9"),
+                CatalogImporter.jsonObject("{ \"a\" : \"1\", \"b\":\"x\\\"y\\\\z\\/\\n\\t\\u00e9\" }"));
+    }
+
+    @Test
+    void readsJsonFieldsByName() {
+        String[] values = CatalogImporter.jsonFields(
+                "{\"genero\":\"Pop\",\"titulo\":\"Uno\",\"extra\":\"x\",\"duracion\":\"3:20\"}");
+
+        assertArrayEquals(new String[] { "Uno", "3:20", null, null, null, "Pop" }, values);
+    }
+
+    @Test
+    void rejectsBadJson() {
+        for (String line : new String[] { "", "[]", "{\"a\":1}", "{\"a\":\"1\"", "{\"a\":\"1\"} x",
+                "{\"a\":\"1", "{\"a\":\"\\q\"}", "{\"a\":\"\\u00\"}", "{\"a\":\"\\uzzzz\"}", "{\"a\" \"1\"}" }) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> CatalogImporter.jsonObject(line), line);
+            assertTrue(e.getMessage().startsWith("JSON invalido: "), e.getMessage());
+        }
+    }
+
+    @Test
+    void buildsAValidSong() {
+        Song song = CatalogImporter.song(new String[] { "Uno", "3:20", "Abba", "Benny", "01/01/1991", "Pop" });
+
+        assertEquals("Uno", song.getTitle());
+        assertEquals(200, song.getLength());
+        assertEquals("Abba", song.getArtist());
+        assertEquals("Benny", song.getAuthor());
+        assertEquals(LocalDate.of(1991, 1, 1), song.getReleaseDate());
+        assertEquals("Pop", song.getGenre());
+        assertEquals(Song.sizeOf(200), song.getSize());
+    }
+
+    @Test
+    void namesTheInvalidField() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CatalogImporter.song(new String[] { "Uno", "3:20", "Abba", "Benny", "nunca", "Pop" }));
+        assertTrue(e.getMessage().startsWith("fecha: "), e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class,
+                () -> CatalogImporter.song(new String[] { "Uno", "3:20", "Abba", null, "01/01/1991", "Pop" }));
+        assertEquals("autor: Falta el campo.", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class,
+                () -> CatalogImporter.song(new String[] { "Uno", "3:20", "Abba 2", "Benny", "01/01/1991", "Pop" }));
+        assertTrue(e.getMessage().startsWith("artista: "), e.getMessage());
+    }
+
+    @Test
+    void rejectsSongsLargerThanADisc() {
+        int minutes = Playlist.CAPACITY / Song.sizeOf(60) + 1;
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CatalogImporter
+                .song(new String[] { "Uno", minutes + ":00", "Abba", "Benny", "01/01/1991", "Pop" }));
+        assertTrue(e.getMessage().contains("450MB"), e.getMessage());
+    }
+}
@@ -0,0 +1,224 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class CatalogTest {
+
+    private static Song song(String title, int length) {
+        Song song = new Song();
+        song.setTitle(title);
+        song.setArtist("Abba");
+        song.setAuthor("Benny");
+        song.setGenre("Pop");
+        song.setLength(length);
+        song.setSize(Song.sizeOf(length));
+
+        return song;
+    }
+
+    private static Catalog loaded(int songs) {
+        List<Song> list = new ArrayList<>();
+
+        for (int i = 0; i < songs; i++) {
+            list.add(song("Cancion " + i, 60 + i));
+        }
+
+        Catalog catalog = new Catalog();
+        catalog.load(new SongTable(list));
+        return catalog;
+    }
+
+    @Test
+    void appliesEachWriteToBothCopies() {
+        Catalog catalog = loaded(3);
+
+        catalog.write(songs -> songs.add(song("Nueva", 100)));
+        SongTable first = catalog.read(songs -> songs);
+        catalog.write(songs -> songs.remove(0));
+        SongTable second = catalog.read(songs -> songs);
+
+        assertNotSame(first, second);
+        catalog.write(songs -> songs.set(0, song("Cambiada", 90)));
+
+        // Las dos copias quedan iguales, con los mismos IDs.
+        for (SongTable table : List.of(first, second)) {
+            assertEquals(3, table.size());
+            assertEquals(List.of(2, 3, 4), List.of(table.id(0), table.id(1), table.id(2)));
+            assertEquals("Cambiada", table.title(0));
+            assertEquals(90, table.lengthSeconds(0));
+            assertEquals(5, table.nextId());
+        }
+    }
+
+    @Test
+    void returnsTheResultOfTheFirstApplication() {
+        Catalog catalog = loaded(2);
+        AtomicInteger applied = new AtomicInteger();
+
+        int id = catalog.write(songs -> {
+            applied.incrementAndGet();
+            return songs.remove(1).getId();
+        });
+
+        assertEquals(2, id);
+        assertEquals(2, applied.get());
+    }
+
+    @Test
+    void appliesWritesOncePerPublishedTable() {
+        Catalog catalog = new Catalog();
+        AtomicInteger applied = new AtomicInteger();
+
+        catalog.write(songs -> {
+            applied.incrementAndGet();
+            return songs.add(song("Uno", 60));
+        });
+
+        assertEquals(1, applied.get());
+        assertEquals(1, (int) catalog.read(SongTable::size));
+    }
+
+    @Test
+    void sharesOneSearchCacheBetweenCopies() {
+        Catalog catalog = loaded(3);
+        SongQuery query = new SongQuery().genre("Pop");
+        QueryCache cache = catalog.read(SongTable::cache);
+
+        assertEquals(3, catalog.read(query::ids).cardinality());
+
+        // El cambio no afecta la busqueda, que se repite sobre la otra copia.
+        Song longer = catalog.read(songs -> songs.get(0)).copy();
+        longer.setLength(500);
+        catalog.write(songs -> songs.set(0, longer));
+
+        assertSame(cache, catalog.read(SongTable::cache));
+        assertEquals(3, catalog.read(query::ids).cardinality());
+        assertTrue(cache.toString().contains(" 1 aciertos, 1 fallos, 0 desalojadas, 0 invalidadas"),
+                cache.toString());
+
+        // Un cambio que si la afecta la invalida una sola vez.
+        Song rock = longer.copy();
+        rock.setGenre("Rock");
+        catalog.write(songs -> songs.set(0, rock));
+
+        assertEquals(2, catalog.read(query::ids).cardinality());
+        assertTrue(cache.toString().contains(" 1 aciertos, 2 fallos, 0 desalojadas, 1 invalidadas"),
+                cache.toString());
+    }
+
+    @Test
+    void keepsSnapshotsApartFromLaterWrites() {
+        Catalog catalog = loaded(2);
+        SongTable snapshot = catalog.snapshot();
+
+        catalog.write(songs -> songs.add(song("Nueva", 100)));
+        catalog.write(songs -> songs.set(0, song("Cambiada", 90)));
+
+        assertEquals(2, snapshot.size());
+        assertEquals("Cancion 0", snapshot.title(0));
+        assertEquals(3, (int) catalog.read(SongTable::size));
+    }
+
+    /**
+     * Cada cambio agrega una cancion y despues anota el nuevo tamano en la
+     * duracion de la primera; los lectores nunca deben ver solo la primera
+     * mitad, ni un tamano menor al que ya vieron.
+     */
+    @Test
+    void readersNeverSeeAHalfAppliedWrite() throws InterruptedException {
+        Catalog catalog = loaded(1);
+        int writes = 5_000;
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                int last = 0;
+
+                while (last < writes + 1 && error.get() == null) {
+                    int[] seen = catalog.read(songs -> new int[] { songs.size(), songs.lengthSeconds(0) });
+
+                    if (seen[0] != seen[1] && !(seen[0] == 1 && seen[1] == 60)) {
+                        error.set("Tamano " + seen[0] + " con duracion " + seen[1]);
+                    } else if (seen[0] < last) {
+                        error.set("El tamano bajo de " + last + " a " + seen[0]);
+                    }
+
+                    last = seen[0];
+                }
+            });
+            readers[r].start();
+        }
+
+        for (int i = 0; i < writes; i++) {
+            catalog.write(songs -> {
+                songs.add(song("Nueva", 100));
+                return songs.set(0, song("Cancion 0", songs.size()));
+            });
+        }
+
+        for (Thread reader : readers) {
+            reader.join(30_000);
+            assertFalse(reader.isAlive());
+        }
+
+        assertNull(error.get());
+    }
+
+    /**
+     * Mientras un cambio espera a que salga un lector de la copia anterior, las
+     * nuevas lecturas no esperan y ya ven el cambio. Lo que busca ese lector en
+     * la copia anterior no queda en el cache.
+     */
+    @Test
+    void readsDoNotWaitForAWriteInProgress() throws InterruptedException {
+        Catalog catalog = loaded(1);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger slowSize = new AtomicInteger();
+        SongQuery query = new SongQuery().genre("Pop");
+
+        Thread slow = new Thread(() -> catalog.read(songs -> {
+            reading.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            slowSize.set(query.ids(songs).cardinality());
+            return null;
+        }));
+        slow.start();
+        reading.await();
+
+        Thread writer = new Thread(() -> catalog.write(songs -> songs.add(song("Nueva", 100))));
+        writer.start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            while (catalog.read(SongTable::size) != 2) {
+                Thread.onSpinWait();
+            }
+        });
+        assertTrue(writer.isAlive());
+
+        release.countDown();
+        slow.join(10_000);
+        writer.join(10_000);
+
+        assertEquals(1, slowSize.get());
+        assertFalse(writer.isAlive());
+        assertEquals(2, (int) catalog.read(SongTable::size));
+        assertEquals(2, catalog.read(query::ids).cardinality());
+    }
+}
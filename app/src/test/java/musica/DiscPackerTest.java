@@ -0,0 +1,186 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DiscPackerTest {
+
+    private static int sum(int[] sizes, int[] chosen) {
+        int sum = 0;
+
+        for (int i : chosen) {
+            sum += sizes[i];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Mayor suma de un subconjunto que no supera la capacidad, probando todos.
+     */
+    private static int bestSum(int[] sizes, int capacity) {
+        int best = 0;
+
+        for (int mask = 0; mask < 1 << sizes.length; mask++) {
+            int sum = 0;
+
+            for (int i = 0; i < sizes.length; i++) {
+                if ((mask & 1 << i) != 0) {
+                    sum += sizes[i];
+                }
+            }
+
+            if (sum <= capacity) {
+                best = Math.max(best, sum);
+            }
+        }
+
+        return best;
+    }
+
+    private static void assertPositions(int[] chosen, int length) {
+        for (int i = 0; i < chosen.length; i++) {
+            assertTrue(chosen[i] >= 0 && chosen[i] < length);
+            assertTrue(i == 0 || chosen[i - 1] < chosen[i], Arrays.toString(chosen));
+        }
+    }
+
+    /**
+     * Revisa que cada cancion que cabe este en un solo disco, que ningun disco
+     * se pase de la capacidad y que no haya dos discos que se pudieran juntar.
+     */
+    private static void assertSplit(int[] sizes, int capacity, List<int[]> discs) {
+        int[] seen = new int[sizes.length];
+        int[] totals = new int[discs.size()];
+
+        for (int d = 0; d < discs.size(); d++) {
+            assertPositions(discs.get(d), sizes.length);
+            totals[d] = sum(sizes, discs.get(d));
+            assertTrue(totals[d] <= capacity);
+
+            for (int i : discs.get(d)) {
+                seen[i]++;
+            }
+        }
+
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(sizes[i] <= capacity ? 1 : 0, seen[i], "cancion " + i);
+        }
+
+        for (int a = 0; a < totals.length; a++) {
+            for (int b = a + 1; b < totals.length; b++) {
+                assertTrue(totals[a] + totals[b] > capacity, "discos " + a + " y " + b);
+            }
+        }
+
+        assertTrue(discs.size() >= DiscPacker.lowerBound(sizes, capacity));
+    }
+
+    @Test
+    void fillsTheDiscExactly() {
+        // De mayor a menor solo cabria la de 6; las dos de 5 llenan el disco.
+        assertArrayEquals(new int[] { 1, 2 }, DiscPacker.fill(new int[] { 6, 5, 5 }, 10));
+        assertArrayEquals(new int[] { 0, 2 }, DiscPacker.fill(new int[] { 64, 200, 65 }, 129));
+        assertArrayEquals(new int[0], DiscPacker.fill(new int[] { 11, 12 }, 10));
+        assertArrayEquals(new int[0], DiscPacker.fill(new int[0], 10));
+        assertArrayEquals(new int[0], DiscPacker.fill(new int[] { 1 }, 0));
+    }
+
+    @Test
+    void fillMatchesEverySubset() {
+        Random random = new Random(6);
+
+        for (int n = 0; n < 2_000; n++) {
+            int[] sizes = new int[random.nextInt(13)];
+            Arrays.setAll(sizes, i -> 1 + random.nextInt(200));
+            int capacity = random.nextInt(600);
+
+            int[] chosen = DiscPacker.fill(sizes, capacity);
+
+            assertPositions(chosen, sizes.length);
+            assertEquals(bestSum(sizes, capacity), sum(sizes, chosen), () -> Arrays.toString(sizes) + " " + capacity);
+        }
+    }
+
+    @Test
+    void fillsLargeSetsFromTheLargestSong() {
+        Random random = new Random(7);
+        int[] sizes = new int[DiscPacker.EXACT_LIMIT + 1];
+        Arrays.setAll(sizes, i -> Song.sizeOf(30 + random.nextInt(600)));
+
+        int[] chosen = DiscPacker.fill(sizes, Playlist.CAPACITY);
+        assertPositions(chosen, sizes.length);
+
+        int free = Playlist.CAPACITY - sum(sizes, chosen);
+        assertTrue(free >= 0);
+
+        // Ninguna de las que quedaron fuera cabe en el espacio libre.
+        boolean[] taken = new boolean[sizes.length];
+        for (int i : chosen) {
+            taken[i] = true;
+        }
+
+        for (int i = 0; i < sizes.length; i++) {
+            assertTrue(taken[i] || sizes[i] > free, "cancion " + i);
+        }
+    }
+
+    @Test
+    void splitsWithFewerDiscsThanFirstFitDecreasing() {
+        // De mayor a menor: {5, 5}, {4, 4}, {3, 3, 3} y {3}. Llenando cada disco
+        // con exactitud bastan tres.
+        int[] sizes = { 5, 5, 4, 4, 3, 3, 3, 3 };
+        List<int[]> discs = DiscPacker.split(sizes, 10);
+
+        assertEquals(3, discs.size());
+        assertSplit(sizes, 10, discs);
+    }
+
+    @Test
+    void splitsRandomSets() {
+        Random random = new Random(8);
+
+        for (int n = 0; n < 500; n++) {
+            int[] sizes = new int[random.nextInt(60)];
+            Arrays.setAll(sizes, i -> 1 + random.nextInt(120));
+            int capacity = 50 + random.nextInt(100);
+
+            assertSplit(sizes, capacity, DiscPacker.split(sizes, capacity));
+        }
+    }
+
+    @Test
+    void splitsLargeSetsWithFirstFitDecreasing() {
+        Random random = new Random(9);
+        int[] sizes = new int[DiscPacker.EXACT_LIMIT * 2];
+        Arrays.setAll(sizes, i -> Song.sizeOf(30 + random.nextInt(600)));
+
+        List<int[]> discs = DiscPacker.split(sizes, Playlist.CAPACITY);
+
+        assertSplit(sizes, Playlist.CAPACITY, discs);
+        assertTrue(discs.size() <= DiscPacker.lowerBound(sizes, Playlist.CAPACITY) * 11 / 9 + 1);
+    }
+
+    @Test
+    void omitsSongsLargerThanADisc() {
+        int[] sizes = { 500, 40, 101, 60 };
+        List<int[]> discs = DiscPacker.split(sizes, 100);
+
+        assertEquals(1, discs.size());
+        assertArrayEquals(new int[] { 1, 3 }, discs.get(0));
+        assertEquals(List.of(), DiscPacker.split(new int[0], 100));
+    }
+
+    @Test
+    void boundsTheNumberOfDiscs() {
+        assertEquals(0, DiscPacker.lowerBound(new int[0], 100));
+        assertEquals(1, DiscPacker.lowerBound(new int[] { 100 }, 100));
+        assertEquals(2, DiscPacker.lowerBound(new int[] { 100, 1 }, 100));
+        assertEquals(1, DiscPacker.lowerBound(new int[] { 50, 101 }, 100));
+    }
+}
@@ -0,0 +1,94 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class EditDistanceTest {
+
+    /**
+     * Distancia del patron al fragmento mas parecido del texto, con la tabla
+     * completa.
+     */
+    private static int reference(String pattern, String text) {
+        int m = pattern.length();
+        int[][] d = new int[m + 1][text.length() + 1];
+
+        for (int i = 0; i <= m; i++) {
+            d[i][0] = i;
+        }
+
+        for (int j = 1; j <= text.length(); j++) {
+            for (int i = 1; i <= m; i++) {
+                int cost = pattern.charAt(i - 1) == text.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+
+        int best = m;
+        for (int j = 0; j <= text.length(); j++) {
+            best = Math.min(best, d[m][j]);
+        }
+
+        return best;
+    }
+
+    private static String random(Random random, int maxLength) {
+        char[] chars = new char[random.nextInt(maxLength + 1)];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(3));
+        }
+
+        return new String(chars);
+    }
+
+    @Test
+    void findsThePatternInsideTheText() {
+        assertEquals(0, EditDistance.within("queen", "we will rock you queen", 2));
+        assertEquals(0, EditDistance.within("", "abba", 0));
+        assertEquals(0, EditDistance.within("", "", 1));
+    }
+
+    @Test
+    void countsEachKindOfEdit() {
+        assertEquals(1, EditDistance.within("qeen", "queen", 1));
+        assertEquals(1, EditDistance.within("queeen", "queen", 1));
+        assertEquals(1, EditDistance.within("qveen", "queen", 1));
+        assertEquals(2, EditDistance.within("qveeen", "the queen", 3));
+    }
+
+    @Test
+    void capsDistancesAboveTheLimit() {
+        assertEquals(2, EditDistance.within("abba", "queen", 1));
+        assertEquals(1, EditDistance.within("abc", "", 0));
+        assertEquals(3, EditDistance.within("abc", "", 3));
+        assertEquals(4, EditDistance.within("mercury", "xx", 3));
+    }
+
+    @Test
+    void matchesTheFullTable() {
+        Random random = new Random(5);
+
+        for (int n = 0; n < 20_000; n++) {
+            String pattern = random(random, 8);
+            String text = random(random, 12);
+            int max = random.nextInt(4);
+            int expected = Math.min(reference(pattern, text), max + 1);
+
+            assertEquals(expected, EditDistance.within(pattern, text, max),
+                    () -> pattern + " / " + text + " / " + max);
+        }
+    }
+
+    @Test
+    void toleratesMoreEditsForLongerQueries() {
+        assertEquals(1, EditDistance.tolerance(1));
+        assertEquals(1, EditDistance.tolerance(4));
+        assertEquals(2, EditDistance.tolerance(5));
+        assertEquals(2, EditDistance.tolerance(8));
+        assertEquals(3, EditDistance.tolerance(9));
+    }
+}
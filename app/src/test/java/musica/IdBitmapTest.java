@@ -0,0 +1,159 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class IdBitmapTest {
+
+    /**
+     * Genera IDs al azar entre {@code from} y {@code to}, cada uno con
+     * probabilidad {@code density}. Con densidad alta los grupos quedan como
+     * mapas de bits, y con densidad baja, como arreglos.
+     */
+    private static TreeSet<Integer> ids(Random random, int from, int to, double density) {
+        TreeSet<Integer> ids = new TreeSet<>();
+
+        for (int id = from; id < to; id++) {
+            if (random.nextDouble() < density) {
+                ids.add(id);
+            }
+        }
+
+        return ids;
+    }
+
+    private static IdBitmap bitmap(TreeSet<Integer> ids) {
+        IdBitmap bitmap = new IdBitmap();
+
+        // En desorden, para que se inserten en medio de los arreglos.
+        ids.descendingSet().forEach(bitmap::add);
+        return bitmap;
+    }
+
+    private static void assertIds(TreeSet<Integer> expected, IdBitmap actual) {
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), actual.toArray());
+        assertEquals(expected.size(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+
+        int rank = 0;
+        for (int id : expected) {
+            assertEquals(id, actual.select(rank++));
+            assertTrue(actual.contains(id));
+            assertEquals(expected.contains(id + 1), actual.contains(id + 1));
+        }
+
+        assertThrows(IndexOutOfBoundsException.class, () -> actual.select(expected.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> actual.select(-1));
+    }
+
+    private static TreeSet<Integer> and(TreeSet<Integer> a, TreeSet<Integer> b) {
+        TreeSet<Integer> result = new TreeSet<>(a);
+        result.retainAll(b);
+        return result;
+    }
+
+    private static TreeSet<Integer> or(TreeSet<Integer> a, TreeSet<Integer> b) {
+        TreeSet<Integer> result = new TreeSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    private static void assertOperations(TreeSet<Integer> a, TreeSet<Integer> b) {
+        IdBitmap x = bitmap(a);
+        IdBitmap y = bitmap(b);
+
+        assertIds(and(a, b), x.and(y));
+        assertIds(and(a, b), y.and(x));
+        assertIds(or(a, b), x.or(y));
+        assertIds(or(a, b), y.or(x));
+
+        // Las operaciones no modifican sus operandos.
+        assertIds(a, x);
+        assertIds(b, y);
+    }
+
+    @Test
+    void addsIdsInAnyOrder() {
+        IdBitmap bitmap = new IdBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+
+        for (int id : new int[] { 70_000, 5, 1, 65_535, 65_536, 5, Integer.MAX_VALUE, 0, 131_071 }) {
+            bitmap.add(id);
+            expected.add(id);
+        }
+
+        assertIds(expected, bitmap);
+        assertIds(new TreeSet<>(), new IdBitmap());
+    }
+
+    @Test
+    void switchesToBitsPastTheArrayLimit() {
+        TreeSet<Integer> expected = new TreeSet<>();
+        IdBitmap bitmap = new IdBitmap();
+
+        for (int id = 4096 * 2; id >= 0; id -= 2) {
+            bitmap.add(id);
+            bitmap.add(id);
+            expected.add(id);
+        }
+
+        assertEquals(4097, bitmap.cardinality());
+        assertIds(expected, bitmap);
+    }
+
+    @Test
+    void buildsFromAnIdList() {
+        IdList list = new IdList();
+        TreeSet<Integer> expected = new TreeSet<>();
+
+        for (int id = 1; id < 200_000; id += 7) {
+            list.add(id);
+            expected.add(id);
+        }
+
+        assertIds(expected, IdBitmap.of(list));
+    }
+
+    @Test
+    void combinesArrays() {
+        Random random = new Random(1);
+        assertOperations(ids(random, 0, 300_000, 0.01), ids(random, 0, 300_000, 0.01));
+    }
+
+    @Test
+    void combinesBitmaps() {
+        Random random = new Random(2);
+        assertOperations(ids(random, 0, 200_000, 0.3), ids(random, 0, 200_000, 0.3));
+
+        // Una interseccion pequena de dos mapas de bits queda como arreglo.
+        assertOperations(ids(random, 0, 65_536, 0.1), ids(random, 0, 65_536, 0.08));
+    }
+
+    @Test
+    void combinesArraysWithBitmaps() {
+        Random random = new Random(3);
+        TreeSet<Integer> dense = ids(random, 0, 131_072, 0.5);
+        TreeSet<Integer> sparse = ids(random, 0, 131_072, 0.02);
+
+        assertOperations(dense, sparse);
+
+        // Dos arreglos cuya union supera el limite quedan como mapa de bits.
+        assertOperations(ids(random, 0, 65_536, 0.05), ids(random, 0, 65_536, 0.05));
+    }
+
+    @Test
+    void combinesDisjointGroups() {
+        Random random = new Random(4);
+        TreeSet<Integer> a = ids(random, 0, 65_536, 0.3);
+        a.addAll(ids(random, 3 * 65_536, 4 * 65_536, 0.01));
+        TreeSet<Integer> b = ids(random, 65_536, 2 * 65_536, 0.01);
+        b.addAll(ids(random, 5 * 65_536, 6 * 65_536, 0.3));
+
+        assertOperations(a, b);
+        assertOperations(a, new TreeSet<>());
+    }
+}
@@ -0,0 +1,202 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Abre el diario y devuelve los enteros de los registros que se aplicaron.
+     */
+    private List<Integer> replay(Path path, long afterLsn) throws IOException {
+        List<Integer> values = new ArrayList<>();
+
+        Journal.open(path, afterLsn, (op, in) -> {
+            assertEquals(Journal.ADD_SONG, op);
+            values.add(in.readInt());
+        }).close();
+
+        return values;
+    }
+
+    private static void append(Journal journal, int... values) throws IOException {
+        for (int value : values) {
+            journal.append(Journal.ADD_SONG, out -> out.writeInt(value));
+        }
+    }
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10, 20, 30);
+            assertEquals(3, journal.lastLsn());
+        }
+
+        assertEquals(List.of(10, 20, 30), replay(path, 0));
+    }
+
+    @Test
+    void skipsRecordsAlreadyInTheBackup() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10, 20, 30);
+        }
+
+        assertEquals(List.of(30), replay(path, 2));
+
+        // Los numeros de secuencia siguen despues del ultimo leido, aunque no se
+        // haya aplicado.
+        try (Journal journal = Journal.open(path, 3, (op, in) -> fail())) {
+            assertEquals(3, journal.lastLsn());
+        }
+    }
+
+    @Test
+    void truncatesATornRecord() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10, 20);
+        }
+
+        long size = Files.size(path);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        assertEquals(List.of(10), replay(path, 0));
+        assertEquals(size / 2, Files.size(path));
+
+        // El siguiente registro ocupa el lugar del descartado.
+        try (Journal journal = Journal.open(path, 0, (op, in) -> {
+        })) {
+            assertEquals(1, journal.lastLsn());
+            append(journal, 40);
+        }
+
+        assertEquals(List.of(10, 40), replay(path, 0));
+    }
+
+    @Test
+    void stopsAtARecordWithABadChecksum() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10, 20, 30);
+        }
+
+        // Cada registro ocupa 21 bytes: longitud, lsn, operacion, dato y crc.
+        byte[] bytes = Files.readAllBytes(path);
+        assertEquals(63, bytes.length);
+        bytes[21 + 16] ^= 1;
+        Files.write(path, bytes);
+
+        assertEquals(List.of(10), replay(path, 0));
+        assertEquals(21, Files.size(path));
+    }
+
+    @Test
+    void replaysClosedSegmentsBeforeTheActiveFile() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10, 20);
+            assertEquals(2, journal.rotate());
+            append(journal, 30);
+            assertEquals(3, journal.rotate());
+            append(journal, 40);
+        }
+
+        assertTrue(Files.exists(dir.resolve("respaldo.log.2")));
+        assertTrue(Files.exists(dir.resolve("respaldo.log.3")));
+        assertEquals(List.of(10, 20, 30, 40), replay(path, 0));
+    }
+
+    @Test
+    void rotatingAnEmptyFileKeepsIt() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 5, (op, in) -> fail())) {
+            assertEquals(5, journal.rotate());
+        }
+
+        assertFalse(Files.exists(dir.resolve("respaldo.log.5")));
+    }
+
+    @Test
+    void keepsAppendingAfterAFailedRotation() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10);
+
+            // Un directorio con el nombre del segmento impide renombrar el archivo.
+            Files.createDirectory(dir.resolve("respaldo.log.1"));
+            assertThrows(IOException.class, journal::rotate);
+
+            append(journal, 20);
+            assertEquals(2, journal.lastLsn());
+        }
+
+        Files.delete(dir.resolve("respaldo.log.1"));
+        assertEquals(List.of(10, 20), replay(path, 0));
+    }
+
+    @Test
+    void discardsSegmentsIncludedInTheBackup() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10);
+            journal.rotate();
+            append(journal, 20);
+            journal.rotate();
+            append(journal, 30);
+
+            journal.discard(1);
+        }
+
+        assertFalse(Files.exists(dir.resolve("respaldo.log.1")));
+        assertTrue(Files.exists(dir.resolve("respaldo.log.2")));
+        assertEquals(List.of(20, 30), replay(path, 1));
+
+        // Abrir el diario descarta los segmentos que el respaldo ya incluye.
+        assertEquals(List.of(30), replay(path, 2));
+        assertFalse(Files.exists(dir.resolve("respaldo.log.2")));
+    }
+
+    @Test
+    void movesTheJournalAndItsSegmentsAside() throws IOException {
+        Path path = dir.resolve("respaldo.log");
+
+        try (Journal journal = Journal.open(path, 0, (op, in) -> fail())) {
+            append(journal, 10);
+            journal.rotate();
+            append(journal, 20);
+        }
+
+        Journal.moveAside(path);
+
+        assertFalse(Files.exists(path));
+        assertTrue(Files.exists(dir.resolve("respaldo.log.corrupto")));
+        assertTrue(Files.exists(dir.resolve("respaldo.log.1.corrupto")));
+        assertEquals(List.of(), replay(path, 0));
+    }
+}
@@ -0,0 +1,47 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void coversEveryTimeWithItsBucket() {
+        Random random = new Random(10);
+
+        for (int n = 0; n < 100_000; n++) {
+            long micros = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucket(micros);
+            long upper = LatencyHistogram.upperBound(bucket);
+
+            assertTrue(micros <= upper, () -> micros + " en " + bucket);
+            assertTrue(upper - micros <= micros / LatencyHistogram.SUB_BUCKETS, () -> micros + " en " + bucket);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < micros, () -> micros + " en " + bucket);
+        }
+
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void findsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+
+        // 98 solicitudes de 5 microsegundos, una de 1 ms y una de 40 ms.
+        for (int i = 0; i < 98; i++) {
+            histogram.record(5_000);
+        }
+
+        histogram.record(1_000_000);
+        histogram.record(40_000_000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(5, histogram.percentile(98));
+        assertEquals(1_023, histogram.percentile(99));
+        assertEquals(40_959, histogram.percentile(100));
+    }
+}
@@ -0,0 +1,136 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class PlaylistRegistryTest {
+
+    @Test
+    void indexesPlaylistsById() {
+        PlaylistRegistry registry = new PlaylistRegistry();
+
+        for (int i = 0; i < 40; i++) {
+            registry.add(new Playlist("Disco " + i));
+        }
+
+        assertEquals(40, registry.size());
+        assertEquals(33, registry.indexOfId("Disco 33"));
+        assertEquals("Disco 17", registry.byId("Disco 17").getId());
+        assertEquals(-1, registry.indexOfId("Disco 40"));
+        assertNull(registry.byId("Disco 40"));
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.get(40));
+    }
+
+    @Test
+    void replacesPlaylistsInPlace() {
+        PlaylistRegistry registry = new PlaylistRegistry(List.of(new Playlist("Rock"), new Playlist("Pop")));
+        Playlist copy = registry.get(0).copy();
+        copy.addSong(7, 1_000);
+
+        assertEquals("Rock", registry.set(0, copy).getId());
+        assertSame(copy, registry.byId("Rock"));
+
+        copy = copy.copy();
+        copy.setId("Jazz");
+        registry.set(0, copy);
+
+        assertEquals(0, registry.indexOfId("Jazz"));
+        assertEquals(-1, registry.indexOfId("Rock"));
+        assertEquals(1, registry.indexOfId("Pop"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void numbersCopiesPerName() {
+        PlaylistRegistry registry = new PlaylistRegistry();
+        registry.add(new Playlist("Rock"));
+        registry.add(new Playlist("Rock Clasico"));
+
+        assertEquals("Pop", registry.uniqueId("Pop"));
+        assertEquals("Rock #1", registry.uniqueId("Rock"));
+        registry.add(new Playlist("Rock #1"));
+        registry.add(new Playlist("Rock #2"));
+
+        // "Rock #2" ya existe, y el contador sigue desde la ultima copia.
+        assertEquals("Rock #3", registry.uniqueId("Rock"));
+        assertEquals("Rock Clasico #1", registry.uniqueId("Rock Clasico"));
+
+        PlaylistRegistry copy = new PlaylistRegistry(registry);
+        assertEquals("Rock #4", copy.uniqueId("Rock"));
+        assertEquals(4, copy.size());
+    }
+
+    @Test
+    void keepsNumberedIdsWithinTheLimit() {
+        assertEquals("Rock #12", PlaylistRegistry.numbered("Rock", 12));
+
+        String id = PlaylistRegistry.numbered("a".repeat(Playlist.MAX_ID_LENGTH), 123);
+        assertEquals(Playlist.MAX_ID_LENGTH, id.length());
+        assertTrue(id.endsWith("a #123"));
+
+        // No se corta un caracter a la mitad ni se deja un espacio antes del
+        // numero.
+        String emoji = "x".repeat(Playlist.MAX_ID_LENGTH - 4) + "🎵" + "yy";
+        assertEquals("x".repeat(Playlist.MAX_ID_LENGTH - 4) + " #1", PlaylistRegistry.numbered(emoji, 1));
+        assertEquals("x".repeat(Playlist.MAX_ID_LENGTH - 5) + " #10",
+                PlaylistRegistry.numbered("x".repeat(Playlist.MAX_ID_LENGTH - 5) + " " + "z".repeat(10), 10));
+    }
+
+    /**
+     * Un solo hilo agrega y reemplaza playlists mientras otros las leen sin
+     * sincronizarse; los lectores siempre encuentran la playlist de cada ID que
+     * ven y nunca una posicion vacia.
+     */
+    @Test
+    void readsWhileOneThreadWrites() throws InterruptedException {
+        PlaylistRegistry registry = new PlaylistRegistry();
+        int writes = 20_000;
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (registry.size() < writes && error.get() == null) {
+                    int size = registry.size();
+
+                    if (size == 0) {
+                        continue;
+                    }
+
+                    Playlist last = registry.get(size - 1);
+
+                    if (last == null) {
+                        error.set("Posicion vacia: " + (size - 1));
+                    } else if (registry.byId(last.getId()) == null) {
+                        error.set("Sin indice: " + last.getId());
+                    } else if (registry.byId("Disco " + (size - 1)) == null) {
+                        error.set("Sin playlist para el ID " + (size - 1));
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        for (int i = 0; i < writes; i++) {
+            registry.add(new Playlist("Disco " + i));
+
+            if (i % 3 == 0) {
+                Playlist copy = registry.get(i / 2).copy();
+                copy.addSong(i, 1);
+                registry.set(i / 2, copy);
+            }
+        }
+
+        for (Thread reader : readers) {
+            reader.join(30_000);
+            assertFalse(reader.isAlive());
+        }
+
+        assertNull(error.get());
+        assertEquals(writes, registry.size());
+    }
+}
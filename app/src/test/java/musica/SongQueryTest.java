@@ -0,0 +1,55 @@
+package musica;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SongQueryTest {
+
+    private static SongTable songs(boolean indexed) {
+        List<Song> list = new ArrayList<>();
+
+        for (String title : new String[] { "Hotel California", "Yesterday", "Help", "Imagine", "Hey Jude" }) {
+            Song song = new Song();
+            song.setTitle(title);
+            song.setArtist("Varios");
+            song.setAuthor("Varios");
+            song.setGenre("Rock");
+            song.setLength(200);
+            song.setSize(Song.sizeOf(200));
+            list.add(song);
+        }
+
+        SongTable songs = new SongTable(list);
+
+        if (indexed) {
+            songs.buildIndex();
+        }
+
+        return songs;
+    }
+
+    private static List<String> titles(SongTable songs, String text) {
+        return new SongQuery().similar(songs, CatalogFile.TITLE, text, SongQuery.SIMILAR_LIMIT).stream()
+                .map(Song::getTitle).toList();
+    }
+
+    /**
+     * Las consultas cortas tienen la tolerancia de su largo aunque el filtro de
+     * n-gramas no alcance, y lo mismo sin indice, como durante la carga.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void findsShortMisspelledTitles(boolean indexed) {
+        SongTable songs = songs(indexed);
+
+        assertEquals("Hotel California", titles(songs, "Hotl").get(0));
+        assertEquals("Imagine", titles(songs, "Imagin").get(0));
+        assertEquals(List.of("Yesterday"), titles(songs, "Yestrdy"));
+        assertEquals(List.of(), titles(songs, "Zzzz"));
+    }
+}